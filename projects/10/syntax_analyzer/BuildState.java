@@ -0,0 +1,124 @@
+package syntax_analyzer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+class BuildState {
+    // Remembers for every class that compiled the hash of its source and
+    // the modification time of the output written from it, in a
+    // .jackbuild file next to the sources. A class is up to date when its
+    // source still has that hash and its output was not touched since.
+    // The file starts with the compiler version and then has one line per
+    // class: source name, hash, output time
+    static final String FILE_NAME = ".jackbuild";
+    // change whenever the same source compiles to different output, a
+    // state file written by another version is ignored
+    static final int COMPILER_VERSION = 2;
+
+    private record Entry(String hash, long outputModified) {}
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private BuildState(Path file) {
+        this.file = file;
+    }
+
+    static BuildState load(String directory, String suffix) throws IOException {
+        // reads the state of the previous build. A missing or damaged file
+        // just means every class is compiled again. Each kind of output has
+        // its own state file, named FILE_NAME followed by suffix
+        BuildState state = new BuildState(Paths.get(directory, FILE_NAME + suffix));
+        if (!Files.isRegularFile(state.file)) {
+            return state;
+        }
+        List<String> lines = Files.readAllLines(state.file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(versionLine())) {
+            return state;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                state.entries.clear();
+                break;
+            }
+            try {
+                state.entries.put(fields[0], new Entry(fields[1], Long.parseLong(fields[2])));
+            } catch (NumberFormatException e) {
+                state.entries.clear();
+                break;
+            }
+        }
+        return state;
+    }
+
+    boolean upToDate(String source, String hash, String output) throws IOException {
+        Entry entry = entries.get(name(source));
+        Path outputPath = Paths.get(output);
+        return entry != null
+            && entry.hash().equals(hash)
+            && Files.isRegularFile(outputPath)
+            && Files.getLastModifiedTime(outputPath).toMillis() == entry.outputModified();
+    }
+
+    void record(String source, String hash, String output) throws IOException {
+        // called after source compiled successfully into output
+        long outputModified = Files.getLastModifiedTime(Paths.get(output)).toMillis();
+        entries.put(name(source), new Entry(hash, outputModified));
+    }
+
+    void forget(String source) {
+        // called when source failed to compile, so it is tried again next time
+        entries.remove(name(source));
+    }
+
+    void save() throws IOException {
+        // writes the state under a temporary name and renames it, so an
+        // interrupted save leaves the previous state in place
+        List<String> lines = new ArrayList<String>();
+        lines.add(versionLine());
+        for (Map.Entry<String, Entry> entry : new TreeMap<String, Entry>(entries).entrySet()) {
+            lines.add(String.format(
+                "%s\t%s\t%d", entry.getKey(), entry.getValue().hash(), entry.getValue().outputModified()
+            ));
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, lines, StandardCharsets.UTF_8);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String hash(String source) throws IOException {
+        // SHA-256 of a source file as hex
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest(Files.readAllBytes(Paths.get(source)))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String versionLine() {
+        return "version\t" + COMPILER_VERSION;
+    }
+
+    private static String name(String source) {
+        return Paths.get(source).getFileName().toString();
+    }
+}
@@ -0,0 +1,537 @@
+package syntax_analyzer;
+
+import java.io.IOException;
+
+public class CodeGenerator {
+    // Compiles the SyntaxTree of one class to VM code. The tree has the
+    // shape the CompilationEngine builds, so each method knows at which
+    // child index the parts of its grammar rule are
+    private final SyntaxTree tree;
+    private final VMWriter writer;
+    private final SymbolTable symbols;
+    private String className;
+    private String subroutineName;
+    // the VM translator does not scope labels by function, so every label
+    // is prefixed with the class name and numbered per class to keep it
+    // unique across all the classes of a program
+    private int labelCount = 0;
+
+    public CodeGenerator(SyntaxTree tree, VMWriter writer) {
+        this.tree = tree;
+        this.writer = writer;
+        this.symbols = new SymbolTable(tree.identifierCount());
+    }
+
+    public void compileClass() throws IOException {
+        // 'class' className '{' classVarDec* subroutineDec* '}'
+        int root = tree.root();
+        this.className = tree.identifier(child(root, 1));
+        for (int i = 3; i < tree.childCount(root) - 1; i++) {
+            int node = child(root, i);
+            if (tree.kind(node) == NodeKind.CLASS_VAR_DEC) {
+                SymbolKind kind = tree.keyword(child(node, 0)) == Keyword.STATIC ? SymbolKind.STATIC : SymbolKind.FIELD;
+                defineVariables(node, kind);
+            } else {
+                compileSubroutine(node);
+            }
+        }
+    }
+
+    private void defineVariables(int node, SymbolKind kind) {
+        // classVarDec and varDec are both: keyword type varName (',' varName)* ';'
+        String type = typeName(child(node, 1));
+        for (int i = 2; i < tree.childCount(node) - 1; i += 2) {
+            symbols.define(tree.identifierId(child(node, i)), type, kind);
+        }
+    }
+
+    private void compileSubroutine(int node) throws IOException {
+        // kind type subroutineName '(' parameterList ')' subroutineBody
+        symbols.startSubroutine();
+        Keyword kind = tree.keyword(child(node, 0));
+        this.subroutineName = tree.identifier(child(node, 2));
+
+        // a method gets the object it was called on as argument 0
+        if (kind == Keyword.METHOD) {
+            symbols.reserve(SymbolKind.ARG);
+        }
+
+        // type varName (',' type varName)*
+        int parameters = child(node, 4);
+        for (int i = 0; i < tree.childCount(parameters); i += 3) {
+            symbols.define(tree.identifierId(child(parameters, i + 1)), typeName(child(parameters, i)), SymbolKind.ARG);
+        }
+
+        // '{' varDec* statements '}'
+        int body = child(node, 6);
+        int bodyCount = tree.childCount(body);
+        for (int i = 1; i < bodyCount - 2; i++) {
+            defineVariables(child(body, i), SymbolKind.VAR);
+        }
+
+        writer.writeFunction(className + "." + subroutineName, symbols.varCount(SymbolKind.VAR));
+        if (kind == Keyword.CONSTRUCTOR) {
+            // allocate the fields of the new object and make it this
+            writer.writePush("constant", symbols.varCount(SymbolKind.FIELD));
+            writer.writeCall("Memory.alloc", 1);
+            writer.writePop("pointer", 0);
+        } else if (kind == Keyword.METHOD) {
+            writer.writePush("argument", 0);
+            writer.writePop("pointer", 0);
+        }
+
+        compileStatements(child(body, bodyCount - 2));
+    }
+
+    private void compileStatements(int node) throws IOException {
+        for (int i = 0; i < tree.childCount(node); i++) {
+            int statement = child(node, i);
+            switch (tree.kind(statement)) {
+                case LET_STATEMENT:
+                    compileLet(statement);
+                    break;
+                case IF_STATEMENT:
+                    compileIf(statement);
+                    break;
+                case WHILE_STATEMENT:
+                    compileWhile(statement);
+                    break;
+                case DO_STATEMENT:
+                    compileDo(statement);
+                    break;
+                default:
+                    compileReturn(statement);
+                    break;
+            }
+        }
+    }
+
+    private void compileLet(int node) throws IOException {
+        // 'let' varName ('[' expression ']')? '=' expression ';'
+        int variable = child(node, 1);
+        if (isSymbol(child(node, 2), '[')) {
+            // the address is computed first, but pointer 1 is only set
+            // after the value since computing the value may use it too
+            pushVariable(variable);
+            compileExpression(child(node, 3));
+            writer.writeArithmetic("add");
+            compileExpression(child(node, 6));
+            writer.writePop("temp", 0);
+            writer.writePop("pointer", 1);
+            writer.writePush("temp", 0);
+            writer.writePop("that", 0);
+        } else {
+            compileExpression(child(node, 3));
+            SymbolKind kind = variableKind(variable);
+            writer.writePop(kind.segment, symbols.indexOf(tree.identifierId(variable)));
+        }
+    }
+
+    private void compileIf(int node) throws IOException {
+        // 'if' '(' expression ')' '{' statements '}' ('else' '{' statements '}')?
+        String label = nextLabel();
+        compileExpression(child(node, 2));
+        writer.writeArithmetic("not");
+        writer.writeIf(className + ".IF_FALSE" + label);
+        compileStatements(child(node, 5));
+        if (tree.childCount(node) > 7) {
+            writer.writeGoto(className + ".IF_END" + label);
+            writer.writeLabel(className + ".IF_FALSE" + label);
+            compileStatements(child(node, 9));
+            writer.writeLabel(className + ".IF_END" + label);
+        } else {
+            writer.writeLabel(className + ".IF_FALSE" + label);
+        }
+    }
+
+    private String nextLabel() {
+        return Integer.toString(labelCount++);
+    }
+
+    private void compileWhile(int node) throws IOException {
+        // 'while' '(' expression ')' '{' statements '}'
+        String label = nextLabel();
+        writer.writeLabel(className + ".WHILE_EXP" + label);
+        compileExpression(child(node, 2));
+        writer.writeArithmetic("not");
+        writer.writeIf(className + ".WHILE_END" + label);
+        compileStatements(child(node, 5));
+        writer.writeGoto(className + ".WHILE_EXP" + label);
+        writer.writeLabel(className + ".WHILE_END" + label);
+    }
+
+    private void compileDo(int node) throws IOException {
+        // 'do' subroutineCall ';', the returned value is thrown away
+        compileCall(node, 1);
+        writer.writePop("temp", 0);
+    }
+
+    private void compileReturn(int node) throws IOException {
+        // 'return' expression? ';', void subroutines return 0
+        if (tree.childCount(node) > 2) {
+            compileExpression(child(node, 1));
+        } else {
+            writer.writePush("constant", 0);
+        }
+        writer.writeReturn();
+    }
+
+    private void compileCall(int node, int first) throws IOException {
+        // subroutineName '(' expressionList ')' |
+        // (className | varName) '.' subroutineName '(' expressionList ')'
+        // where the call starts at child first of node
+        int name = child(node, first);
+        String function;
+        int argumentCount = 0;
+        int expressions;
+        if (isSymbol(child(node, first + 1), '.')) {
+            String subroutine = tree.identifier(child(node, first + 2));
+            int id = tree.identifierId(name);
+            if (symbols.kindOf(id) != null) {
+                // a method called on the object in a variable
+                pushVariable(name);
+                function = symbols.typeOf(id) + "." + subroutine;
+                argumentCount = 1;
+            } else {
+                function = tree.identifier(name) + "." + subroutine;
+            }
+            expressions = child(node, first + 4);
+            if (function.equals("Math.multiply") && tree.childCount(expressions) == 3
+                    && compileConstantProduct(child(expressions, 0), child(expressions, 2))) {
+                return;
+            }
+        } else {
+            // a method of this class called on this
+            writer.writePush("pointer", 0);
+            function = className + "." + tree.identifier(name);
+            argumentCount = 1;
+            expressions = child(node, first + 2);
+        }
+
+        // expression (',' expression)*
+        for (int i = 0; i < tree.childCount(expressions); i += 2) {
+            compileExpression(child(expressions, i));
+            argumentCount++;
+        }
+        writer.writeCall(function, argumentCount);
+    }
+
+    private void compileExpression(int node) throws IOException {
+        // term (op term)*, evaluated left to right without precedence.
+        // Leading terms are folded for as long as they are constants, and
+        // an operator with a constant operand may become cheaper commands
+        int count = tree.childCount(node);
+        Integer value = constantTerm(child(node, 0));
+        int i = 1;
+        while (value != null && i < count) {
+            Integer right = constantTerm(child(node, i + 1));
+            Integer folded = right == null ? null : fold(tree.symbol(child(node, i)), value, right);
+            if (folded == null) {
+                break;
+            }
+            value = folded;
+            i += 2;
+        }
+
+        if (value == null) {
+            compileTerm(child(node, 0));
+        } else if (i < count && tree.symbol(child(node, i)) == '*') {
+            // constant * term is the same as term * constant
+            compileTerm(child(node, i + 1));
+            compileMultiply(value);
+            i += 2;
+        } else {
+            pushConstant(value);
+        }
+
+        for (; i < count; i += 2) {
+            char operator = tree.symbol(child(node, i));
+            Integer right = constantTerm(child(node, i + 1));
+            if (right != null) {
+                compileConstantOperand(operator, right);
+            } else {
+                compileTerm(child(node, i + 1));
+                compileOperator(operator);
+            }
+        }
+    }
+
+    private boolean compileConstantProduct(int left, int right) throws IOException {
+        // Math.multiply is what * compiles to, so calling it directly with
+        // a constant argument is reduced the same way. Returns false,
+        // writing nothing, if neither argument is a constant
+        Integer leftValue = constantExpression(left);
+        Integer rightValue = constantExpression(right);
+        if (leftValue != null && rightValue != null) {
+            pushConstant(fold('*', leftValue, rightValue));
+        } else if (rightValue != null) {
+            compileExpression(left);
+            compileMultiply(rightValue);
+        } else if (leftValue != null) {
+            compileExpression(right);
+            compileMultiply(leftValue);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void compileConstantOperand(char operator, int value) throws IOException {
+        // applies the operator to the value on the stack and a constant,
+        // leaving out operations that do not change the value
+        if (operator == '*') {
+            compileMultiply(value);
+        } else if (operator == '/' && (value == 1 || value == -1)) {
+            if (value == -1) {
+                writer.writeArithmetic("neg");
+            }
+        } else if (value != 0 || (operator != '+' && operator != '-' && operator != '|')) {
+            pushConstant(value);
+            compileOperator(operator);
+        }
+    }
+
+    private void compileMultiply(int value) throws IOException {
+        // multiplies the value on the stack by a constant. Constants with
+        // at most three bits set, powers of two included, become a chain
+        // of additions instead of a call to Math.multiply
+        int magnitude = Math.abs(value);
+        if (value == 0) {
+            // the operand is still computed for its side effects
+            writer.writePush("constant", 0);
+            writer.writeArithmetic("and");
+        } else if (value != Short.MIN_VALUE && Integer.bitCount(magnitude) <= 3) {
+            // going from the highest bit down, the result is doubled for
+            // every bit and the operand added for the bits that are set.
+            // The VM has no dup, so copies go through temp 1 (the operand)
+            // and temp 2, which nothing else uses
+            if (Integer.bitCount(magnitude) > 1) {
+                writer.writePop("temp", 1);
+                writer.writePush("temp", 1);
+            }
+            for (int bit = 30 - Integer.numberOfLeadingZeros(magnitude); bit >= 0; bit--) {
+                writer.writePop("temp", 2);
+                writer.writePush("temp", 2);
+                writer.writePush("temp", 2);
+                writer.writeArithmetic("add");
+                if ((magnitude & (1 << bit)) != 0) {
+                    writer.writePush("temp", 1);
+                    writer.writeArithmetic("add");
+                }
+            }
+            if (value < 0) {
+                writer.writeArithmetic("neg");
+            }
+        } else {
+            pushConstant(value);
+            writer.writeCall("Math.multiply", 2);
+        }
+    }
+
+    private void pushConstant(int value) throws IOException {
+        // push constant only takes 0 to 32767
+        if (value >= 0) {
+            writer.writePush("constant", value);
+        } else if (value == Short.MIN_VALUE) {
+            writer.writePush("constant", Short.MAX_VALUE);
+            writer.writeArithmetic("not");
+        } else {
+            writer.writePush("constant", -value);
+            writer.writeArithmetic("neg");
+        }
+    }
+
+    private Integer constantTerm(int node) {
+        // the value of a term made only of constants, or null
+        int first = child(node, 0);
+        switch (tree.kind(first)) {
+            case INTEGER_CONSTANT:
+                return tree.intVal(first);
+            case KEYWORD:
+                Keyword keyword = tree.keyword(first);
+                if (keyword == Keyword.THIS) {
+                    return null;
+                }
+                return keyword == Keyword.TRUE ? -1 : 0;
+            case SYMBOL:
+                if (tree.symbol(first) == '(') {
+                    return constantExpression(child(node, 1));
+                }
+                Integer operand = constantTerm(child(node, 1));
+                if (operand == null) {
+                    return null;
+                }
+                return (int) (short) (tree.symbol(first) == '-' ? -operand : ~operand);
+            default:
+                return null;
+        }
+    }
+
+    private Integer constantExpression(int node) {
+        // the value of an expression made only of constants, or null
+        Integer value = constantTerm(child(node, 0));
+        for (int i = 1; value != null && i < tree.childCount(node); i += 2) {
+            Integer right = constantTerm(child(node, i + 1));
+            value = right == null ? null : fold(tree.symbol(child(node, i)), value, right);
+        }
+        return value;
+    }
+
+    private static Integer fold(char operator, int left, int right) {
+        // evaluates an operator as the VM would, on 16 bit values where true
+        // is -1. Returns null for a division by zero, which is left to fail
+        // at run time
+        int result;
+        switch (operator) {
+            case '+':
+                result = left + right;
+                break;
+            case '-':
+                result = left - right;
+                break;
+            case '*':
+                result = left * right;
+                break;
+            case '/':
+                if (right == 0) {
+                    return null;
+                }
+                result = left / right;
+                break;
+            case '&':
+                result = left & right;
+                break;
+            case '|':
+                result = left | right;
+                break;
+            case '<':
+                result = left < right ? -1 : 0;
+                break;
+            case '>':
+                result = left > right ? -1 : 0;
+                break;
+            default:
+                result = left == right ? -1 : 0;
+                break;
+        }
+        return (int) (short) result;
+    }
+
+    private void compileOperator(char operator) throws IOException {
+        switch (operator) {
+            case '+':
+                writer.writeArithmetic("add");
+                break;
+            case '-':
+                writer.writeArithmetic("sub");
+                break;
+            case '*':
+                writer.writeCall("Math.multiply", 2);
+                break;
+            case '/':
+                writer.writeCall("Math.divide", 2);
+                break;
+            case '&':
+                writer.writeArithmetic("and");
+                break;
+            case '|':
+                writer.writeArithmetic("or");
+                break;
+            case '<':
+                writer.writeArithmetic("lt");
+                break;
+            case '>':
+                writer.writeArithmetic("gt");
+                break;
+            default:
+                writer.writeArithmetic("eq");
+                break;
+        }
+    }
+
+    private void compileTerm(int node) throws IOException {
+        int first = child(node, 0);
+        switch (tree.kind(first)) {
+            case INTEGER_CONSTANT:
+                writer.writePush("constant", tree.intVal(first));
+                break;
+            case STRING_CONSTANT:
+                // a new String object with the characters appended one by one
+                String text = tree.stringVal(first);
+                writer.writePush("constant", text.length());
+                writer.writeCall("String.new", 1);
+                for (int i = 0; i < text.length(); i++) {
+                    writer.writePush("constant", text.charAt(i));
+                    writer.writeCall("String.appendChar", 2);
+                }
+                break;
+            case KEYWORD:
+                compileKeywordConstant(tree.keyword(first));
+                break;
+            case IDENTIFIER:
+                if (tree.childCount(node) == 1) {
+                    pushVariable(first);
+                } else if (isSymbol(child(node, 1), '[')) {
+                    // varName '[' expression ']'
+                    pushVariable(first);
+                    compileExpression(child(node, 2));
+                    writer.writeArithmetic("add");
+                    writer.writePop("pointer", 1);
+                    writer.writePush("that", 0);
+                } else {
+                    compileCall(node, 0);
+                }
+                break;
+            default:
+                if (tree.symbol(first) == '(') {
+                    // '(' expression ')'
+                    compileExpression(child(node, 1));
+                } else {
+                    // unaryOp term
+                    compileTerm(child(node, 1));
+                    writer.writeArithmetic(tree.symbol(first) == '-' ? "neg" : "not");
+                }
+                break;
+        }
+    }
+
+    private void compileKeywordConstant(Keyword keyword) throws IOException {
+        // true is -1, all bits set; false and null are 0
+        if (keyword == Keyword.THIS) {
+            writer.writePush("pointer", 0);
+        } else if (keyword == Keyword.TRUE) {
+            writer.writePush("constant", 0);
+            writer.writeArithmetic("not");
+        } else {
+            writer.writePush("constant", 0);
+        }
+    }
+
+    private void pushVariable(int node) throws IOException {
+        SymbolKind kind = variableKind(node);
+        writer.writePush(kind.segment, symbols.indexOf(tree.identifierId(node)));
+    }
+
+    private SymbolKind variableKind(int node) {
+        SymbolKind kind = symbols.kindOf(tree.identifierId(node));
+        if (kind == null) {
+            throw new IllegalArgumentException(String.format(
+                "%s.%s: %s is not defined", className, subroutineName, tree.identifier(node)
+            ));
+        }
+        return kind;
+    }
+
+    private String typeName(int node) {
+        // a type is either a keyword or the name of a class
+        return tree.kind(node) == NodeKind.KEYWORD ? tree.keyword(node).text : tree.identifier(node);
+    }
+
+    private boolean isSymbol(int node, char symbol) {
+        return tree.kind(node) == NodeKind.SYMBOL && tree.symbol(node) == symbol;
+    }
+
+    private int child(int node, int index) {
+        return tree.child(node, index);
+    }
+}
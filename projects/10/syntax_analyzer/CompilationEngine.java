@@ -1,24 +1,38 @@
 package syntax_analyzer;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.List;
 
 public class CompilationEngine {
-    private final FileWriter writer;
+    // the engine does not write any output, it builds the SyntaxTree of
+    // the class and visitors such as XmlWriter produce output from it
+    private final SyntaxTree.Builder tree = new SyntaxTree.Builder();
     private final JackTokenizer tokenizer;
-    private static final List<String> operators = Arrays.asList("+", "-", "*", "/", "&amp;", "|", "&lt;", "&gt;", "=");
-    private static final List<String> unaryOperators = Arrays.asList("-", "~");
     
-    public CompilationEngine(JackTokenizer tokenizer, String outputFile) throws IOException {
-        this.writer = new FileWriter(outputFile);
+    public CompilationEngine(JackTokenizer tokenizer) throws IOException {
         this.tokenizer = tokenizer;
         this.tokenizer.advance(); // advance to the first token
     }
 
-    public void closeWriter() throws IOException {
-        this.writer.close();
+    private void compileType() {
+        // a type is either a keyword or the name of a class
+        if (this.tokenizer.tokenType() == TokenType.KEYWORD) {
+            this.tree.keyword(this.tokenizer.keyword());
+        } else {
+            this.tree.identifier(this.tokenizer.identifierId());
+        }
+    }
+
+    private static boolean isOperator(char symbol) {
+        switch (symbol) {
+            case '+': case '-': case '*': case '/': case '&': case '|': case '<': case '>': case '=':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUnaryOperator(char symbol) {
+        return symbol == '-' || symbol == '~';
     }
 
     // IMPORTANT:
@@ -28,38 +42,32 @@ public class CompilationEngine {
     // before it returns so the next function can
     // expect the same and so on...
 
-    // In other words, each time we write something to the output file,
-    // advance the tokenizer immediately after the write. Calling another 
+    // In other words, each time we add a token to the tree,
+    // advance the tokenizer immediately after adding it. Calling another 
     // compile method DOES NOT require an additional advance after invoking
     // the method.
 
     // This is known as the "predictive parsing" pattern in recursive descent parsing.
 
-    public void compileClass() throws IOException {
-        this.writer.write("<class>\n");
+    public SyntaxTree compileClass() throws IOException {
+        this.tree.open(NodeKind.CLASS);
 
         // keyword class
-        this.writer.write(
-            String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-        );
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // then should be an identifier
-        this.writer.write(
-            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-        );
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // then open curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         while (
             this.tokenizer.tokenType() == TokenType.KEYWORD &&
-            (this.tokenizer.keyWord().equals("field") || 
-            this.tokenizer.keyWord().equals("static"))
+            (this.tokenizer.keyword() == Keyword.FIELD || 
+            this.tokenizer.keyword() == Keyword.STATIC)
         ) {
             // process as many classvarDec as needed
             compileClassVarDec();
@@ -67,103 +75,78 @@ public class CompilationEngine {
 
         while (
             this.tokenizer.tokenType() == TokenType.KEYWORD &&
-            (this.tokenizer.keyWord().equals("constructor") || 
-            this.tokenizer.keyWord().equals("method") ||
-            this.tokenizer.keyWord().equals("function"))
+            (this.tokenizer.keyword() == Keyword.CONSTRUCTOR || 
+            this.tokenizer.keyword() == Keyword.METHOD ||
+            this.tokenizer.keyword() == Keyword.FUNCTION)
         ) {
             // process as many subroutines as needed
             compileSubroutine();
         }
 
         // finally a close curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
 
         // that should have been the final token so do not advance here
 
-        this.writer.write("</class>\n");
+        this.tree.close(NodeKind.CLASS);
+        return this.tree.build(this.tokenizer.identifierNames());
     }
 
     private void compileClassVarDec() throws IOException {
-        this.writer.write("<classVarDec>\n");
+        this.tree.open(NodeKind.CLASS_VAR_DEC);
 
         // write the keyword static or field
-        this.writer.write(
-            String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-        );
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // note that type can be either a keyword or an identifier (custom class)
         if (this.tokenizer.tokenType() == TokenType.KEYWORD) {
-            this.writer.write(
-                String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-            );
+            this.tree.keyword(this.tokenizer.keyword());
         } else {
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
         }
         this.tokenizer.advance();
 
         // varname
-        this.writer.write(
-            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-        );
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // there are optionally one or more ", Varname" following the first var name
-        while (this.tokenizer.symbol().equals(",")) {
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+        while (this.tokenizer.symbol() == ',') {
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
             this.tokenizer.advance();
         }
 
         // should end with a semicolon
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
-        this.writer.write("</classVarDec>\n");
+        this.tree.close(NodeKind.CLASS_VAR_DEC);
     }
 
     private void compileSubroutine() throws IOException {
-        this.writer.write("<subroutineDec>\n");
+        this.tree.open(NodeKind.SUBROUTINE_DEC);
 
         // write the keyword, constructor, method or function
-        this.writer.write(
-            String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-        );
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // note that type can be either a keyword or an identifier (custom class)
         if (this.tokenizer.tokenType() == TokenType.KEYWORD) {
-            this.writer.write(
-                String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-            );
+            this.tree.keyword(this.tokenizer.keyword());
         } else {
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
         }
         this.tokenizer.advance();
 
         // write the identifier for subroutine names
-        this.writer.write(
-            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-        );
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // open paren
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         if (this.tokenizer.tokenType() != TokenType.SYMBOL) {
@@ -172,72 +155,59 @@ public class CompilationEngine {
             compileParameterList();
         } else {
             // if there are no parameters, write empty parameter list
-            this.writer.write("<parameterList>\n</parameterList>\n");
+            this.tree.open(NodeKind.PARAMETER_LIST);
+            this.tree.close(NodeKind.PARAMETER_LIST);
         }
 
         // close paren
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         compileSubroutineBody();
 
-        this.writer.write("</subroutineDec>\n");
+        this.tree.close(NodeKind.SUBROUTINE_DEC);
     }
 
     private void compileParameterList() throws IOException {
-        this.writer.write("<parameterList>\n");
+        this.tree.open(NodeKind.PARAMETER_LIST);
 
         // write type
-        this.writer.write(
-            String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-        );
+        compileType();
         this.tokenizer.advance();
         
         // write var name
-        this.writer.write(
-            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-        );
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // handle additional parameters (optional)
-        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(",")) {
+        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ',') {
             // write comma
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             // write type
-            this.writer.write(
-                String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-            );
+            compileType();
             this.tokenizer.advance();
 
             // write var name
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
             this.tokenizer.advance();
         }
 
-        this.writer.write("</parameterList>\n");
+        this.tree.close(NodeKind.PARAMETER_LIST);
     }
 
     private void compileSubroutineBody() throws IOException {
-        this.writer.write("<subroutineBody>\n");
+        this.tree.open(NodeKind.SUBROUTINE_BODY);
 
         // open curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // zero or more var dec
         while (
             this.tokenizer.tokenType() == TokenType.KEYWORD &&
-            this.tokenizer.keyWord().equals("var")
+            this.tokenizer.keyword() == Keyword.VAR
         ) {
             compileVarDec();
         }
@@ -246,67 +216,51 @@ public class CompilationEngine {
         compileStatements();
 
         // close curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
-        this.writer.write("</subroutineBody>\n");
+        this.tree.close(NodeKind.SUBROUTINE_BODY);
     }
 
     private void compileVarDec() throws IOException {
-        this.writer.write("<varDec>\n");
+        this.tree.open(NodeKind.VAR_DEC);
 
         // write keyword var
-        this.writer.write(
-            String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-        );
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // write type
         // NOTE that type can be either a keyword or an identifier (custom class)
         if (this.tokenizer.tokenType() == TokenType.KEYWORD) {
-            this.writer.write(
-                String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-            );
+            this.tree.keyword(this.tokenizer.keyword());
         } else {
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
         }
         this.tokenizer.advance();
 
         // write var name
-        this.writer.write(
-            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-        );
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // handle additional var names
-        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(",")) {
+        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ',') {
             // write comma
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             // write next var name
-            this.writer.write(
-                String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-            );
+            this.tree.identifier(this.tokenizer.identifierId());
             this.tokenizer.advance();
         }
 
         // write semicolon
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
-        this.writer.write("</varDec>\n");
+        this.tree.close(NodeKind.VAR_DEC);
     }
 
     private void compileStatements() throws IOException {
-        this.writer.write("<statements>\n");
+        this.tree.open(NodeKind.STATEMENTS);
 
         // zero or more of:
         // let statement | if statement | while statement | do statement | return statement
@@ -314,355 +268,323 @@ public class CompilationEngine {
         while (true) {
             if (this.tokenizer.tokenType() != TokenType.KEYWORD) {
                 break;
-            } else if (this.tokenizer.keyWord().equals("let")) {
+            } else if (this.tokenizer.keyword() == Keyword.LET) {
                 compileLet();
-            } else if (this.tokenizer.keyWord().equals("if")) {
+            } else if (this.tokenizer.keyword() == Keyword.IF) {
                 compileIf();
-            } else if (this.tokenizer.keyWord().equals("while")) {
+            } else if (this.tokenizer.keyword() == Keyword.WHILE) {
                 compileWhile();
-            } else if (this.tokenizer.keyWord().equals("do")) {
+            } else if (this.tokenizer.keyword() == Keyword.DO) {
                 compileDo();
-            } else if (this.tokenizer.keyWord().equals("return")) {
+            } else if (this.tokenizer.keyword() == Keyword.RETURN) {
                 compileReturn();
             } else {
                 break;
             }
         }
         
-        this.writer.write("</statements>\n");
+        this.tree.close(NodeKind.STATEMENTS);
     }
 
     private void compileDo() throws IOException {
-        this.writer.write("<doStatement>\n");
+        this.tree.open(NodeKind.DO_STATEMENT);
 
         // keyword do
-        this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord()));
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // write subroutine/class/var name
-        this.writer.write(String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier()));
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // check if there's a dot operator
-        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(".")) {
-            this.writer.write("    <symbol> . </symbol>\n");
+        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == '.') {
+            this.tree.symbol('.');
             this.tokenizer.advance();
 
             // write subroutine name after dot
-            this.writer.write(String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier()));
+            this.tree.identifier(this.tokenizer.identifierId());
             this.tokenizer.advance();
         }
 
         // write open parenthesis
-        this.writer.write("    <symbol> ( </symbol>\n");
+        this.tree.symbol('(');
         this.tokenizer.advance();
 
         // compile expression list unless the next token is a close parenthesis
-        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(")")) {
+        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ')') {
             // write an empty expression list
-            this.writer.write("<expressionList>\n</expressionList>\n");
+            this.tree.open(NodeKind.EXPRESSION_LIST);
+            this.tree.close(NodeKind.EXPRESSION_LIST);
         } else {
             compileExpressionList();
         }
 
         // write close parenthesis  
-        this.writer.write("    <symbol> ) </symbol>\n");
+        this.tree.symbol(')');
         this.tokenizer.advance();
 
         // semicolon
-        this.writer.write(String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol()));
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
-        this.writer.write("</doStatement>\n");
+        this.tree.close(NodeKind.DO_STATEMENT);
     }
 
     private void compileLet() throws IOException {
-        this.writer.write("<letStatement>\n");
+        this.tree.open(NodeKind.LET_STATEMENT);
 
         // keyword let
-        this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord()));
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // write varname
-        this.writer.write(String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier()));
+        this.tree.identifier(this.tokenizer.identifierId());
         this.tokenizer.advance();
 
         // check for array access with []
-        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals("[")) {
-            this.writer.write("    <symbol> [ </symbol>\n");
+        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == '[') {
+            this.tree.symbol('[');
             this.tokenizer.advance();
             
             compileExpression();
 
-            this.writer.write("    <symbol> ] </symbol>\n");
+            this.tree.symbol(']');
             this.tokenizer.advance();
         }
 
         // equals sign
-        this.writer.write("    <symbol> = </symbol>\n");
+        this.tree.symbol('=');
         this.tokenizer.advance();
 
         // expression
         compileExpression();
 
         // semicolon
-        this.writer.write("    <symbol> ; </symbol>\n");
+        this.tree.symbol(';');
         this.tokenizer.advance();
         
-        this.writer.write("</letStatement>\n");
+        this.tree.close(NodeKind.LET_STATEMENT);
     }
 
     private void compileWhile() throws IOException {
-        this.writer.write("<whileStatement>\n");
+        this.tree.open(NodeKind.WHILE_STATEMENT);
 
         // keyword while
-        this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord()));
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // open paren
-        this.writer.write(String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol()));
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // expression
         compileExpression();
 
         // close paren
-        this.writer.write(String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol()));
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // open curly brace
-        this.writer.write(String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol()));
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // statements
         compileStatements();
 
         // close curly brace
-        this.writer.write(String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol()));
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
-        this.writer.write("</whileStatement>\n");
+        this.tree.close(NodeKind.WHILE_STATEMENT);
     }
 
     private void compileReturn() throws IOException{
-        this.writer.write("<returnStatement>\n");
+        this.tree.open(NodeKind.RETURN_STATEMENT);
 
         // keyword 'return' 
-        this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())); 
+        this.tree.keyword(this.tokenizer.keyword()); 
         this.tokenizer.advance();
 
         // zero or one of expression 
-        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(";")) {
-            this.writer.write("    <symbol> ; </symbol>\n");
+        if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ';') {
+            this.tree.symbol(';');
             this.tokenizer.advance();
         } else {
             compileExpression();
-            this.writer.write("    <symbol> ; </symbol>\n");
+            this.tree.symbol(';');
             this.tokenizer.advance();
         }
 
-        this.writer.write("</returnStatement>\n");
+        this.tree.close(NodeKind.RETURN_STATEMENT);
     }
 
     private void compileIf() throws IOException {
-        this.writer.write("<ifStatement>\n");
+        this.tree.open(NodeKind.IF_STATEMENT);
 
         // keyword if
-        this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord()));
+        this.tree.keyword(this.tokenizer.keyword());
         this.tokenizer.advance();
 
         // open parenthesis
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // expression
         compileExpression();
 
         // close parenthesis
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // open curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // statements
         compileStatements();
 
         // close curly brace
-        this.writer.write(
-            String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-        );
+        this.tree.symbol(this.tokenizer.symbol());
         this.tokenizer.advance();
 
         // the else clause is optional
-        if (this.tokenizer.tokenType() == TokenType.KEYWORD && this.tokenizer.keyWord().equals("else")) {
+        if (this.tokenizer.tokenType() == TokenType.KEYWORD && this.tokenizer.keyword() == Keyword.ELSE) {
             // keyword else 
-            this.writer.write(String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord()));
+            this.tree.keyword(this.tokenizer.keyword());
             this.tokenizer.advance();
             
             // open curly brace
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             // statements
             compileStatements();
             
             // close curly brace
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
         }
 
-        this.writer.write("</ifStatement>\n");
+        this.tree.close(NodeKind.IF_STATEMENT);
     }
 
     private void compileExpression() throws IOException {
-        this.writer.write("<expression>\n");
+        this.tree.open(NodeKind.EXPRESSION);
 
         compileTerm();
 
-        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.operators.contains(this.tokenizer.symbol())) {
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+        while (this.tokenizer.tokenType() == TokenType.SYMBOL && isOperator(this.tokenizer.symbol())) {
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             compileTerm();
         }
 
-        this.writer.write("</expression>\n");
+        this.tree.close(NodeKind.EXPRESSION);
     }
 
     private void compileTerm() throws IOException {
-        this.writer.write("<term>\n");
+        this.tree.open(NodeKind.TERM);
 
         // integerConstant
         if (this.tokenizer.tokenType() == TokenType.INT_CONST) {
-            this.writer.write(
-                String.format("    <integerConstant> %s </integerConstant>\n", this.tokenizer.intVal())
-            );
+            this.tree.integerConstant(this.tokenizer.intVal());
             this.tokenizer.advance();
         // stringConstant
         } else if (this.tokenizer.tokenType() == TokenType.STRING_CONST) {
-            this.writer.write(
-                String.format("    <stringConstant> %s </stringConstant>\n", this.tokenizer.stringVal())
-            );
+            this.tree.stringConstant(this.tokenizer.stringVal());
             this.tokenizer.advance();
         // keywordConstant
         } else if (this.tokenizer.tokenType() == TokenType.KEYWORD) {
-            this.writer.write(
-                String.format("    <keyword> %s </keyword>\n", this.tokenizer.keyWord())
-            );
+            this.tree.keyword(this.tokenizer.keyword());
             this.tokenizer.advance();
         // varName | varName[] | subroutineCall
         // (each of these starts with an identifier)
         } else if (this.tokenizer.tokenType() == TokenType.IDENTIFIER) {    
-            String savedIdentifier = this.tokenizer.identifier();
+            int savedIdentifier = this.tokenizer.identifierId();
             this.tokenizer.advance();
             
             // Look ahead at next token to determine what kind of term this is
             if (this.tokenizer.tokenType() == TokenType.SYMBOL) {
-                if (this.tokenizer.symbol().equals("[")) {  // array access
+                if (this.tokenizer.symbol() == '[') {  // array access
                     // Write the array name
-                    this.writer.write(
-                        String.format("    <identifier> %s </identifier>\n", savedIdentifier)
-                    );
-                    this.writer.write("    <symbol> [ </symbol>\n");
+                    this.tree.identifier(savedIdentifier);
+                    this.tree.symbol('[');
                     this.tokenizer.advance();
 
                     compileExpression();
 
-                    this.writer.write("    <symbol> ] </symbol>\n");
+                    this.tree.symbol(']');
                     this.tokenizer.advance();
-                } else if (this.tokenizer.symbol().equals("(") || this.tokenizer.symbol().equals(".")) {  // subroutine call
+                } else if (this.tokenizer.symbol() == '(' || this.tokenizer.symbol() == '.') {  // subroutine call
                     // Write the initial identifier (class/var name or subroutine name)
-                    this.writer.write(
-                        String.format("    <identifier> %s </identifier>\n", savedIdentifier)
-                    );
+                    this.tree.identifier(savedIdentifier);
 
-                    if (this.tokenizer.symbol().equals(".")) {  // class/var name followed by .subroutineName
-                        this.writer.write("    <symbol> . </symbol>\n");
+                    if (this.tokenizer.symbol() == '.') {  // class/var name followed by .subroutineName
+                        this.tree.symbol('.');
                         this.tokenizer.advance();
 
                         // Write subroutine name
-                        this.writer.write(
-                            String.format("    <identifier> %s </identifier>\n", this.tokenizer.identifier())
-                        );
+                        this.tree.identifier(this.tokenizer.identifierId());
                         this.tokenizer.advance();
                     }
 
                     // Write open paren
-                    this.writer.write("    <symbol> ( </symbol>\n");
+                    this.tree.symbol('(');
                     this.tokenizer.advance();
 
                     // Handle expression list
-                    if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(")")) {
-                        this.writer.write("<expressionList>\n</expressionList>\n");
+                    if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ')') {
+                        this.tree.open(NodeKind.EXPRESSION_LIST);
+                        this.tree.close(NodeKind.EXPRESSION_LIST);
                     } else {
                         compileExpressionList();
                     }
 
                     // Write close paren
-                    this.writer.write("    <symbol> ) </symbol>\n");
+                    this.tree.symbol(')');
                     this.tokenizer.advance();
                 } else {  // just a variable name
-                    this.writer.write(
-                        String.format("    <identifier> %s </identifier>\n", savedIdentifier)
-                    );
+                    this.tree.identifier(savedIdentifier);
                 }
             } else {  // just a variable name
-                this.writer.write(
-                    String.format("    <identifier> %s </identifier>\n", savedIdentifier)
-                );
+                this.tree.identifier(savedIdentifier);
             }
         // '(' expression ')'
-        } else if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals("(")) {
-            this.writer.write("    <symbol> ( </symbol>\n");
+        } else if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == '(') {
+            this.tree.symbol('(');
             this.tokenizer.advance();
 
             compileExpression();
 
-            this.writer.write("    <symbol> ) </symbol>\n");
+            this.tree.symbol(')');
             this.tokenizer.advance();
         }
         // unaryOp term
-        else if (this.tokenizer.tokenType() == TokenType.SYMBOL && this.unaryOperators.contains(this.tokenizer.symbol())) {
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+        else if (this.tokenizer.tokenType() == TokenType.SYMBOL && isUnaryOperator(this.tokenizer.symbol())) {
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             compileTerm();
         }
 
-        this.writer.write("</term>\n");
+        this.tree.close(NodeKind.TERM);
     }
 
     private void compileExpressionList() throws IOException {
-        this.writer.write("<expressionList>\n");
+        this.tree.open(NodeKind.EXPRESSION_LIST);
 
         compileExpression();
 
         // zero or more of ', expression'
-        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol().equals(",")) {
-            this.writer.write(
-                String.format("    <symbol> %s </symbol>\n", this.tokenizer.symbol())
-            );
+        while (this.tokenizer.tokenType() == TokenType.SYMBOL && this.tokenizer.symbol() == ',') {
+            this.tree.symbol(this.tokenizer.symbol());
             this.tokenizer.advance();
 
             compileExpression();
         }
 
-        this.writer.write("</expressionList>\n");
+        this.tree.close(NodeKind.EXPRESSION_LIST);
     }
 }
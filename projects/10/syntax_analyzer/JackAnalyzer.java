@@ -2,32 +2,220 @@ package syntax_analyzer;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 public class JackAnalyzer {
 
-    private static void compileFile(String filename) throws IOException {
-        JackTokenizer tokenizer = new JackTokenizer(filename);
+    // how long to wait for more changes after a file changed, saving a
+    // file in an editor usually causes several events in a row
+    private static final long WATCH_SETTLE_MILLIS = 20;
 
-        String outputFile = String.format("%s_comp.xml", filename.split("\\.")[0]);
+    // outcome of compiling one file, error is null when it succeeded and
+    // skipped is set when the output was already up to date
+    private record FileResult(String fileName, long elapsedNanos, Throwable error, boolean skipped) {}
 
-        CompilationEngine engine = new CompilationEngine(tokenizer, outputFile);
+    private static String outputFile(String filename, boolean vm) {
+        String name = filename.split("\\.")[0];
+        return vm ? String.format("%s.vm", name) : String.format("%s_comp.xml", name);
+    }
+
+    private static void compileFile(String filename, boolean vm) throws IOException {
+        String outputFile = outputFile(filename, vm);
 
         // every file should consist of a single class
-        engine.compileClass();
-        engine.closeWriter();
+        SyntaxTree tree;
+        try (JackTokenizer tokenizer = new JackTokenizer(filename)) {
+            tree = new CompilationEngine(tokenizer).compileClass();
+        }
+
+        if (vm) {
+            try (VMWriter writer = new VMWriter(outputFile)) {
+                new CodeGenerator(tree, writer).compileClass();
+            }
+        } else {
+            try (XmlWriter writer = new XmlWriter(outputFile)) {
+                tree.accept(writer);
+            }
+        }
     }
 
-    public static void main(String args[]) throws IOException {
+    private static FileResult timeFile(String filename, boolean vm, BuildState state) {
+        // compiles a file unless its output is up to date, catching any
+        // failure so it does not affect the other files being compiled
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            String hash = BuildState.hash(filename);
+            if (state.upToDate(filename, hash, outputFile(filename, vm))) {
+                return new FileResult(filename, System.nanoTime() - start, null, true);
+            }
+            try {
+                compileFile(filename, vm);
+                state.record(filename, hash, outputFile(filename, vm));
+            } catch (Exception e) {
+                state.forget(filename);
+                throw e;
+            }
+        } catch (Exception e) {
+            error = e;
+        }
+        return new FileResult(filename, System.nanoTime() - start, error, false);
+    }
+
+    public static void main(String args[]) throws IOException, InterruptedException {
         String input = args[0];
-        File[] fileList = new File(input).listFiles();
+
+        // --jobs N compiles up to N files at once, defaulting to the number of cores
+        // --watch keeps running and compiles classes again when their source changes
+        // --vm compiles each class to a .vm file instead of writing its syntax tree as XML
+        int jobs = Runtime.getRuntime().availableProcessors();
+        boolean watch = false;
+        boolean vm = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--jobs")) {
+                jobs = i + 1 < args.length ? parseJobs(args[i + 1]) : 0;
+                if (jobs < 1) {
+                    System.err.println("usage: JackAnalyzer <directory> [--jobs N] [--watch] [--vm], N at least 1");
+                    System.exit(1);
+                }
+                i++;
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--vm")) {
+                vm = true;
+            }
+        }
 
         // assume input is always a directory name
-        // iterate over each file in directory and compile
+        // each file has its own tokenizer and engine so they are compiled independently.
+        // Classes that did not change since the last run keep their output
+        BuildState state = BuildState.load(input, vm ? "-vm" : "");
+        List<FileResult> results = build(sourceFiles(input), jobs, vm, state);
+
+        if (watch) {
+            watch(input, jobs, vm, state);
+        }
+        for (FileResult result : results) {
+            if (result.error() != null) {
+                System.exit(1);
+            }
+        }
+    }
+
+    private static int parseJobs(String value) {
+        // the number of jobs, or 0 if value is not a number
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static List<String> sourceFiles(String input) {
+        // every .jack file in the directory, in file name order
+        File[] fileList = new File(input).listFiles((dir, name) -> name.endsWith(".jack"));
+        Arrays.sort(fileList);
+        List<String> fileNames = new ArrayList<String>();
         for (File file : fileList) {
-            String fileName = file.getName();
-            if (fileName.endsWith(".jack")) {
-                compileFile(input + "/" + fileName);
+            fileNames.add(input + "/" + file.getName());
+        }
+        return fileNames;
+    }
+
+    private static List<FileResult> build(List<String> fileNames, int jobs, boolean vm, BuildState state)
+            throws IOException, InterruptedException {
+        // compiles the files on a pool of workers, prints a summary and
+        // saves the build state
+        long start = System.nanoTime();
+        List<FileResult> results = new ArrayList<FileResult>();
+        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+        try {
+            List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>();
+            for (String fileName : fileNames) {
+                futures.add(executor.submit(() -> timeFile(fileName, vm, state)));
+            }
+            for (Future<FileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // timeFile catches exceptions, so only errors end up here
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        printSummary(results, elapsed);
+        state.save();
+        return results;
+    }
+
+    private static void watch(String input, int jobs, boolean vm, BuildState state) throws IOException, InterruptedException {
+        // compiles the classes whose source is created or changed until the
+        // process is stopped. Only the changed files are looked at, and the
+        // build state skips any that were saved without being modified
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            Paths.get(input).register(
+                watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY
+            );
+            System.out.println(String.format("watching %s for changes", input));
+            while (true) {
+                WatchKey key = watcher.take();
+                Set<String> changed = new TreeSet<String>();
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            // events were lost, so look at every file
+                            changed.addAll(sourceFiles(input));
+                        } else if (event.context().toString().endsWith(".jack")) {
+                            changed.add(input + "/" + event.context());
+                        }
+                    }
+                    key.reset();
+                    key = watcher.poll(WATCH_SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                changed.removeIf(fileName -> !new File(fileName).isFile());
+                if (!changed.isEmpty()) {
+                    build(new ArrayList<String>(changed), jobs, vm, state);
+                }
+            }
+        }
+    }
+
+    private static void printSummary(List<FileResult> results, long elapsedNanos) {
+        int failures = 0;
+        int skipped = 0;
+        for (FileResult result : results) {
+            String name = new File(result.fileName()).getName();
+            if (result.error() != null) {
+                failures++;
+                System.out.println(String.format("%-24s FAILED: %s", name, result.error()));
+            } else if (result.skipped()) {
+                skipped++;
+                System.out.println(String.format("%-24s up to date", name));
+            } else {
+                System.out.println(String.format("%-24s %8.2f ms", name, result.elapsedNanos() / 1e6));
             }
         }
+        System.out.println(String.format(
+            "%d files, %d failed, %d up to date, %.2f ms", results.size(), failures, skipped, elapsedNanos / 1e6
+        ));
     }
 }
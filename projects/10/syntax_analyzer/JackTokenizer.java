@@ -1,171 +1,456 @@
 package syntax_analyzer;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.HashSet;
 
-public class JackTokenizer {
+public class JackTokenizer implements Closeable {
+    // Reads tokens on demand with a table driven DFA. Starting from START
+    // the DFA consumes characters until it has no transition, and the
+    // state it stopped in says what kind of token it read. White space and
+    // comments are read the same way and dropped.
+    //
+    // The source is read from a channel into a fixed size buffer, and only
+    // the current token and a few tokens of lookahead are kept, in a ring
+    // buffer. Memory use does not depend on the size of the source, unless
+    // a single token or comment is larger than the buffer
 
-    private final List<String> tokens = new ArrayList<String>();
-    private int tokenIndex = -1;
-    private static final Set<Character> SYMBOLS = new HashSet<>(
-        Arrays.asList(',', ';', '[', ']', '{', '}', '-', '+', '<', '>', '=', '(', ')', '|', '&', '/', '~', '*', '.'
-    ));
-    private static final Set<String> KEYWORDS = new HashSet<>(
-        Arrays.asList(
-            "class", "method", "function", "constructor", "int", "boolean", "char", "void", "var", "static", "field", "let", "do", "if", "else", "while", "return", "true", "false", "null", "this"
-        )
-    );
+    // character classes
+    private static final int WHITESPACE = 0;
+    private static final int NEWLINE = 1;
+    private static final int LETTER = 2;
+    private static final int DIGIT = 3;
+    private static final int SYMBOL_CHAR = 4;
+    private static final int SLASH = 5;
+    private static final int STAR = 6;
+    private static final int QUOTE = 7;
+    private static final int OTHER = 8;
+    private static final int CLASS_COUNT = 9;
 
-    public JackTokenizer(String filename) throws IOException { 
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(filename));
-        readFile(bufferedReader);
-        bufferedReader.close();
-    }
-
-    private void readFile(BufferedReader reader) throws IOException {
-        // reads the source file line by line and handle comments, blank lines, etc
-        String line = null;
-        boolean multiLineComment = false;
-
-        while ((line = reader.readLine()) != null) {
-            if (line.startsWith("/*")) {
-                if (line.endsWith("*/")) {
-                    // it's a multi line comment that is actually
-                    // only a single line
-                    continue;
-                }
-                // starting a multi line comment
-                multiLineComment = true;
-                continue;
-            }
-            if (line.endsWith("*/")) {
-                // ending a multi line comment
-                multiLineComment = false;
-                continue;
+    // DFA states, -1 means there is no transition
+    private static final int START = 0;
+    private static final int IN_IDENTIFIER = 1;
+    private static final int IN_INTEGER = 2;
+    private static final int IN_STRING = 3;
+    private static final int STRING_END = 4;
+    private static final int SYMBOL_END = 5;
+    private static final int AFTER_SLASH = 6;
+    private static final int LINE_COMMENT = 7;
+    private static final int BLOCK_COMMENT = 8;
+    private static final int BLOCK_COMMENT_STAR = 9;
+    private static final int BLOCK_COMMENT_END = 10;
+    private static final int IN_WHITESPACE = 11;
+    private static final int STATE_COUNT = 12;
+
+    // what a token ending in each state is. Tokens that are neither a
+    // TokenType nor SKIPPED end in a state that cannot finish a token
+    private static final int SKIPPED = -1;
+    private static final int UNFINISHED = -2;
+    private static final int[] ACCEPTS = new int[STATE_COUNT];
+
+    private static final byte[] CHAR_CLASS = new byte[256];
+    private static final int[] TRANSITIONS = new int[STATE_COUNT * CLASS_COUNT];
+    // TRANSITIONS expanded to one row of 256 entries per state, indexed by
+    // the byte itself, so the scanning loop does a single table lookup
+    private static final byte[] BYTE_TRANSITIONS = new byte[STATE_COUNT * 256];
+
+    static {
+        Arrays.fill(CHAR_CLASS, (byte) OTHER);
+        for (char c : " \t\r\f".toCharArray()) {
+            CHAR_CLASS[c] = WHITESPACE;
+        }
+        CHAR_CLASS['\n'] = NEWLINE;
+        for (int c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = LETTER;
+            CHAR_CLASS[c - 'a' + 'A'] = LETTER;
+        }
+        CHAR_CLASS['_'] = LETTER;
+        for (int c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = DIGIT;
+        }
+        for (char c : "{}()[].,;+-&|<>=~".toCharArray()) {
+            CHAR_CLASS[c] = SYMBOL_CHAR;
+        }
+        CHAR_CLASS['/'] = SLASH;
+        CHAR_CLASS['*'] = STAR;
+        CHAR_CLASS['"'] = QUOTE;
+
+        Arrays.fill(TRANSITIONS, -1);
+        transition(START, WHITESPACE, IN_WHITESPACE);
+        transition(START, NEWLINE, IN_WHITESPACE);
+        transition(START, LETTER, IN_IDENTIFIER);
+        transition(START, DIGIT, IN_INTEGER);
+        transition(START, SYMBOL_CHAR, SYMBOL_END);
+        transition(START, STAR, SYMBOL_END);
+        transition(START, SLASH, AFTER_SLASH);
+        transition(START, QUOTE, IN_STRING);
+        transition(IN_WHITESPACE, WHITESPACE, IN_WHITESPACE);
+        transition(IN_WHITESPACE, NEWLINE, IN_WHITESPACE);
+        transition(IN_IDENTIFIER, LETTER, IN_IDENTIFIER);
+        transition(IN_IDENTIFIER, DIGIT, IN_IDENTIFIER);
+        transition(IN_INTEGER, DIGIT, IN_INTEGER);
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            transition(IN_STRING, c, IN_STRING);
+            transition(LINE_COMMENT, c, LINE_COMMENT);
+            transition(BLOCK_COMMENT, c, BLOCK_COMMENT);
+            transition(BLOCK_COMMENT_STAR, c, BLOCK_COMMENT);
+        }
+        transition(IN_STRING, QUOTE, STRING_END);
+        transition(IN_STRING, NEWLINE, -1);
+        transition(AFTER_SLASH, SLASH, LINE_COMMENT);
+        transition(AFTER_SLASH, STAR, BLOCK_COMMENT);
+        transition(LINE_COMMENT, NEWLINE, -1);
+        transition(BLOCK_COMMENT, STAR, BLOCK_COMMENT_STAR);
+        transition(BLOCK_COMMENT_STAR, STAR, BLOCK_COMMENT_STAR);
+        transition(BLOCK_COMMENT_STAR, SLASH, BLOCK_COMMENT_END);
+
+        for (int state = 0; state < STATE_COUNT; state++) {
+            for (int b = 0; b < 256; b++) {
+                BYTE_TRANSITIONS[state * 256 + b] = (byte) TRANSITIONS[state * CLASS_COUNT + CHAR_CLASS[b]];
             }
-            if (!multiLineComment && !line.isEmpty() && !line.startsWith("//")) {
-                splitLine(line.trim());
+        }
+
+        Arrays.fill(ACCEPTS, UNFINISHED);
+        ACCEPTS[IN_IDENTIFIER] = TokenType.IDENTIFIER.ordinal();
+        ACCEPTS[IN_INTEGER] = TokenType.INT_CONST.ordinal();
+        ACCEPTS[STRING_END] = TokenType.STRING_CONST.ordinal();
+        ACCEPTS[SYMBOL_END] = TokenType.SYMBOL.ordinal();
+        ACCEPTS[AFTER_SLASH] = TokenType.SYMBOL.ordinal();
+        ACCEPTS[LINE_COMMENT] = SKIPPED;
+        ACCEPTS[BLOCK_COMMENT_END] = SKIPPED;
+        ACCEPTS[IN_WHITESPACE] = SKIPPED;
+    }
+
+    private static void transition(int state, int charClass, int next) {
+        TRANSITIONS[state * CLASS_COUNT + charClass] = next;
+    }
+
+    // keywords are found with a perfect hash of their first and last
+    // character and length. The constants were searched for so that no
+    // two keywords share a slot, which the static block checks
+    private static final int KEYWORD_SLOTS = 32;
+    private static final Keyword[] KEYWORD_TABLE = new Keyword[KEYWORD_SLOTS];
+
+    static {
+        for (Keyword keyword : Keyword.values()) {
+            String text = keyword.text;
+            int slot = keywordHash(text.charAt(0), text.charAt(text.length() - 1), text.length());
+            if (KEYWORD_TABLE[slot] != null) {
+                throw new IllegalStateException("keyword hash collision: " + keyword);
             }
+            KEYWORD_TABLE[slot] = keyword;
         }
     }
 
-    private void splitLine(String line) {
-        // splits a line of text into individual tokens
-        if (line.length() == 1) {
-            tokens.add(line);
-            return;
-        } 
+    private static int keywordHash(int first, int last, int length) {
+        return (first * 8 + last * 27 + length) & (KEYWORD_SLOTS - 1);
+    }
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+    private static final Keyword[] KEYWORDS = Keyword.values();
+    private static final int MAX_INTEGER = 32767;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // tokens held at once: the current one and up to RING_SIZE - 1 ahead
+    private static final int RING_SIZE = 4;
+
+    private final String filename;
+    private final FileChannel channel;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+    // line of the byte at position, for error messages
+    private int line = 1;
+
+    // the ring: slot head holds the current token, the next count - 1
+    // slots the lookahead. The value of a token is the Keyword ordinal, the
+    // symbol character, the identifier id or the integer, only string
+    // constants have a text
+    private final int[] types = new int[RING_SIZE];
+    private final int[] values = new int[RING_SIZE];
+    private final String[] texts = new String[RING_SIZE];
+
+    // identifiers are interned per file. names holds the name of every id
+    // and the open addressing table maps a name's hash to its id + 1
+    private String[] names = new String[64];
+    private int[] nameSlots = new int[128];
+    private int nameCount = 0;
+    private int head = 0;
+    private int count = 0;
+    // set by the first advance, before it there is no current token
+    private boolean started = false;
+
+    public JackTokenizer(String filename) throws IOException { 
+        this.filename = filename;
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
 
-        // remove any comments at the end of the line
-        for (int i = 0; i < line.length()-1; i++) { 
-            if (line.charAt(i) == '/' && line.charAt(i+1) == '/') {
-                // the rest of this line is a comment and should be ignored
-                line = line.substring(0, i);
-                break;
+    private boolean fill(int tokens) throws IOException {
+        // lexes until the ring holds at least the given number of tokens,
+        // returns false if the source ends first
+        while (count < tokens) {
+            if (!readToken()) {
+                return false;
             }
         }
+        return true;
+    }
 
-        // iterate through each char in the line building the tokens
-        String token = "";
-        boolean inString = false;
-        for (int i = 0; i < line.length(); i++) {
-            if (line.charAt(i) == '"') {
-                // current char is a double quote
-                if (inString) {
-                    // this is the end of the string
-                    inString = false;
-                    token += line.charAt(i);
-                } else {
-                    // this is the start of a string
-                    token += line.charAt(i);
-                    inString = true;
+    private boolean readToken() throws IOException {
+        // runs the DFA from START until it reads a token that is not white
+        // space or a comment and adds it to the ring
+        while (true) {
+            if (position == limit && !refill(position)) {
+                return false;
+            }
+            int start = position;
+            int state = START;
+            byte[] transitions = BYTE_TRANSITIONS;
+            while (true) {
+                if (position == limit) {
+                    // the token continues past the buffered bytes, refill
+                    // moves it to the front of the buffer even at the end
+                    // of the input
+                    boolean more = refill(start);
+                    start = 0;
+                    if (!more) {
+                        break;
+                    }
                 }
-            } else if (inString) {
-                // we are inside a string so ignore symbols and whitespace
-                token += line.charAt(i);
-            } else if (line.charAt(i) == ' ') {
-                // current char is white space
-                if (!token.isEmpty()) {
-                    tokens.add(token);
+                int next = transitions[(state << 8) | (buffer[position] & 0xFF)];
+                if (next < 0) {
+                    break;
                 }
-                token = "";
-            } else if (SYMBOLS.contains(line.charAt(i))) {
-                // current char is a symbol
-                if (!token.isEmpty()) {
-                    tokens.add(token);
+                state = next;
+                position++;
+            }
+            int accepted = ACCEPTS[state];
+            if (position == start) {
+                throw error(String.format("unexpected character '%c'", (char) (buffer[start] & 0xFF)));
+            }
+            if (accepted == UNFINISHED) {
+                throw error(state == IN_STRING ? "unterminated string" : "unterminated comment");
+            }
+            if (accepted == SKIPPED) {
+                for (int i = start; i < position; i++) {
+                    if (buffer[i] == '\n') {
+                        line++;
+                    }
                 }
-                tokens.add(Character.toString(line.charAt(i)));
-                token = "";
-            } else {
-                token += line.charAt(i);
+                continue;
             }
+            addToken(accepted, start, position - start);
+            return true;
+        }
+    }
+
+    private boolean refill(int keep) throws IOException {
+        // moves the bytes from keep on to the front of the buffer and reads
+        // more after them, returns false if the input has ended. The bytes
+        // are moved either way, so a token that started at keep now starts
+        // at 0. The buffer only grows when a single token fills it
+        int kept = limit - keep;
+        System.arraycopy(buffer, keep, buffer, 0, kept);
+        limit = kept;
+        position -= keep;
+        if (endOfInput) {
+            return false;
+        }
+        if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
         }
-        if (!token.isEmpty()) {
-            tokens.add(token);
+        int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+        if (read <= 0) {
+            endOfInput = true;
+            return false;
         }
+        limit += read;
+        return true;
     }
 
-    public boolean hasMoreTokens() {
-        return tokenIndex < tokens.size() - 1;
+    private void addToken(int type, int start, int length) {
+        int value = 0;
+        String text = null;
+        if (type == TokenType.IDENTIFIER.ordinal()) {
+            Keyword keyword = KEYWORD_TABLE[keywordHash(buffer[start], buffer[start + length - 1], length)];
+            if (keyword != null && matches(keyword.text, start, length)) {
+                type = TokenType.KEYWORD.ordinal();
+                value = keyword.ordinal();
+            } else {
+                value = intern(start, length);
+            }
+        } else if (type == TokenType.SYMBOL.ordinal()) {
+            value = buffer[start];
+        } else if (type == TokenType.INT_CONST.ordinal()) {
+            for (int i = start; i < start + length; i++) {
+                value = value * 10 + (buffer[i] - '0');
+                if (value > MAX_INTEGER) {
+                    throw error("integer constant is larger than " + MAX_INTEGER);
+                }
+            }
+        } else {
+            // a string constant, without its quotes
+            text = new String(buffer, start + 1, length - 2, StandardCharsets.ISO_8859_1);
+        }
+        int slot = (head + count) & (RING_SIZE - 1);
+        types[slot] = type;
+        values[slot] = value;
+        texts[slot] = text;
+        count++;
     }
 
-    public void advance() {
-        tokenIndex++;
+    private int intern(int start, int length) {
+        // returns the id of the identifier in buffer[start, start + length),
+        // only creating a String the first time a name is seen
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = hash * 31 + buffer[i];
+        }
+        int mask = nameSlots.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (nameSlots[slot] != 0) {
+            int id = nameSlots[slot] - 1;
+            if (matches(names[id], start, length)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (nameCount == names.length) {
+            names = Arrays.copyOf(names, nameCount * 2);
+        }
+        names[nameCount] = new String(buffer, start, length, StandardCharsets.ISO_8859_1);
+        nameSlots[slot] = nameCount + 1;
+        nameCount++;
+        if (nameCount * 2 > nameSlots.length) {
+            rehashNames();
+        }
+        return nameCount - 1;
     }
 
-    private String currentToken() {
-        return tokens.get(tokenIndex);
+    private void rehashNames() {
+        nameSlots = new int[nameSlots.length * 2];
+        int mask = nameSlots.length - 1;
+        for (int id = 0; id < nameCount; id++) {
+            int hash = names[id].hashCode();
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (nameSlots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            nameSlots[slot] = id + 1;
+        }
     }
 
-    public TokenType tokenType() {
-        if (currentToken().length() == 1 && SYMBOLS.contains(currentToken().charAt(0))) {
-            return TokenType.SYMBOL;
-        } 
-        if (KEYWORDS.contains(currentToken())) {
-            return TokenType.KEYWORD;
-        } 
-        if (currentToken().startsWith("\"")) {
-            return TokenType.STRING_CONST;
+    private boolean matches(String keyword, int start, int length) {
+        if (keyword.length() != length) {
+            return false;
         }
-        if (currentToken().matches("-?\\d+")) {
-            // integer regex
-            return TokenType.INT_CONST;
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != keyword.charAt(i)) {
+                return false;
+            }
         }
-        return TokenType.IDENTIFIER;
+        return true;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("%s:%d: %s", filename, line, message));
     }
 
-    public String keyWord() {
-        return currentToken();
+    public boolean hasMoreTokens() throws IOException {
+        return fill(currentCount() + 1);
     }
 
-    public String symbol() {
-        if (currentToken().equals("<")) {
-            return "&lt;";
+    public void advance() throws IOException {
+        // drops the current token, if any, and makes the next one current.
+        // Past the last token there is no current token
+        if (started && count > 0) {
+            head = (head + 1) & (RING_SIZE - 1);
+            count--;
         }
-        if (currentToken().equals(">")) {
-            return "&gt;";
+        started = true;
+        fill(1);
+    }
+
+    public TokenType peekTokenType() throws IOException {
+        // the type of the token after the current one, or null at the end
+        if (!fill(currentCount() + 1)) {
+            return null;
         }
-        if (currentToken().equals("&")) {
-            return "&amp;";
+        return TOKEN_TYPES[types[(head + currentCount()) & (RING_SIZE - 1)]];
+    }
+
+    public char peekSymbol() throws IOException {
+        // the token after the current one if it is a symbol, otherwise 0
+        if (peekTokenType() != TokenType.SYMBOL) {
+            return 0;
+        }
+        return (char) values[(head + currentCount()) & (RING_SIZE - 1)];
+    }
+
+    private int currentCount() {
+        // 1 if the slot at head is the current token, 0 if it is lookahead
+        return started ? 1 : 0;
+    }
+
+    private int current() {
+        // the slot of the current token
+        if (!started || count == 0) {
+            throw new IllegalStateException(String.format("%s: unexpected end of file", filename));
         }
-        return currentToken();
+        return head;
+    }
+
+    public TokenType tokenType() {
+        return TOKEN_TYPES[types[current()]];
+    }
+
+    public Keyword keyword() {
+        // the current keyword, or null if the current token is not a KEYWORD
+        int token = current();
+        return types[token] == TokenType.KEYWORD.ordinal() ? KEYWORDS[values[token]] : null;
+    }
+
+    public char symbol() {
+        // the current symbol, or 0 if the current token is not a SYMBOL
+        int token = current();
+        return types[token] == TokenType.SYMBOL.ordinal() ? (char) values[token] : 0;
+    }
+
+    public int identifierId() {
+        // the id of the current IDENTIFIER. Ids are numbered from 0 in the
+        // order names first appear in the file, the same name has the same id
+        return values[current()];
     }
 
     public String identifier() {
-        return currentToken();
+        return identifierName(identifierId());
+    }
+
+    public String identifierName(int id) {
+        return names[id];
+    }
+
+    public String[] identifierNames() {
+        // the names of all identifiers seen so far, indexed by id
+        return Arrays.copyOf(names, nameCount);
     }
 
     public int intVal() {
-        return Integer.parseInt(currentToken());
+        return values[current()];
     }
 
     public String stringVal() {
-        return currentToken().substring(1, currentToken().length() - 1);
+        // the string without its quotes
+        return texts[current()];
     }
 }
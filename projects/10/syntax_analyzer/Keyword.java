@@ -0,0 +1,32 @@
+package syntax_analyzer;
+
+public enum Keyword {
+   CLASS("class"),
+   METHOD("method"),
+   FUNCTION("function"),
+   CONSTRUCTOR("constructor"),
+   INT("int"),
+   BOOLEAN("boolean"),
+   CHAR("char"),
+   VOID("void"),
+   VAR("var"),
+   STATIC("static"),
+   FIELD("field"),
+   LET("let"),
+   DO("do"),
+   IF("if"),
+   ELSE("else"),
+   WHILE("while"),
+   RETURN("return"),
+   TRUE("true"),
+   FALSE("false"),
+   NULL("null"),
+   THIS("this");
+
+   // the keyword as it is written in Jack source
+   public final String text;
+
+   Keyword(String text) {
+      this.text = text;
+   }
+}
@@ -0,0 +1,36 @@
+package syntax_analyzer;
+
+public enum NodeKind {
+   CLASS("class"),
+   CLASS_VAR_DEC("classVarDec"),
+   SUBROUTINE_DEC("subroutineDec"),
+   PARAMETER_LIST("parameterList"),
+   SUBROUTINE_BODY("subroutineBody"),
+   VAR_DEC("varDec"),
+   STATEMENTS("statements"),
+   LET_STATEMENT("letStatement"),
+   IF_STATEMENT("ifStatement"),
+   WHILE_STATEMENT("whileStatement"),
+   DO_STATEMENT("doStatement"),
+   RETURN_STATEMENT("returnStatement"),
+   EXPRESSION("expression"),
+   TERM("term"),
+   EXPRESSION_LIST("expressionList"),
+   // terminals, one per token type
+   KEYWORD("keyword"),
+   SYMBOL("symbol"),
+   IDENTIFIER("identifier"),
+   INTEGER_CONSTANT("integerConstant"),
+   STRING_CONSTANT("stringConstant");
+
+   // the name of the grammar rule or token type, as used in the XML output
+   public final String tag;
+
+   NodeKind(String tag) {
+      this.tag = tag;
+   }
+
+   public boolean isTerminal() {
+      return this.ordinal() >= KEYWORD.ordinal();
+   }
+}
@@ -0,0 +1,15 @@
+package syntax_analyzer;
+
+public enum SymbolKind {
+   STATIC("static"),
+   FIELD("this"),
+   ARG("argument"),
+   VAR("local");
+
+   // the VM memory segment that holds variables of this kind
+   public final String segment;
+
+   SymbolKind(String segment) {
+      this.segment = segment;
+   }
+}
@@ -0,0 +1,71 @@
+package syntax_analyzer;
+
+import java.util.Arrays;
+
+public class SymbolTable {
+    // The variables visible while compiling one class. Identifiers are
+    // looked up by the id the tokenizer interned them under, so every
+    // scope is a few arrays indexed by id. Subroutine variables shadow
+    // class variables of the same name
+    private final SymbolKind[] classKinds;
+    private final String[] classTypes;
+    private final int[] classIndices;
+    private final SymbolKind[] subroutineKinds;
+    private final String[] subroutineTypes;
+    private final int[] subroutineIndices;
+    // the number of variables of each kind defined so far
+    private final int[] counts = new int[SymbolKind.values().length];
+
+    public SymbolTable(int identifierCount) {
+        this.classKinds = new SymbolKind[identifierCount];
+        this.classTypes = new String[identifierCount];
+        this.classIndices = new int[identifierCount];
+        this.subroutineKinds = new SymbolKind[identifierCount];
+        this.subroutineTypes = new String[identifierCount];
+        this.subroutineIndices = new int[identifierCount];
+    }
+
+    public void startSubroutine() {
+        // forgets the arguments and locals of the previous subroutine
+        Arrays.fill(subroutineKinds, null);
+        counts[SymbolKind.ARG.ordinal()] = 0;
+        counts[SymbolKind.VAR.ordinal()] = 0;
+    }
+
+    public void define(int id, String type, SymbolKind kind) {
+        // gives the identifier the next index of its kind
+        int index = counts[kind.ordinal()]++;
+        if (kind == SymbolKind.STATIC || kind == SymbolKind.FIELD) {
+            classKinds[id] = kind;
+            classTypes[id] = type;
+            classIndices[id] = index;
+        } else {
+            subroutineKinds[id] = kind;
+            subroutineTypes[id] = type;
+            subroutineIndices[id] = index;
+        }
+    }
+
+    public void reserve(SymbolKind kind) {
+        // takes an index no identifier refers to, such as argument 0 of a
+        // method which holds this
+        counts[kind.ordinal()]++;
+    }
+
+    public int varCount(SymbolKind kind) {
+        return counts[kind.ordinal()];
+    }
+
+    public SymbolKind kindOf(int id) {
+        // null if the identifier is not a variable in scope
+        return subroutineKinds[id] != null ? subroutineKinds[id] : classKinds[id];
+    }
+
+    public String typeOf(int id) {
+        return subroutineKinds[id] != null ? subroutineTypes[id] : classTypes[id];
+    }
+
+    public int indexOf(int id) {
+        return subroutineKinds[id] != null ? subroutineIndices[id] : classIndices[id];
+    }
+}
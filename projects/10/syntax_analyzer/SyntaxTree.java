@@ -0,0 +1,225 @@
+package syntax_analyzer;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class SyntaxTree {
+    // The parse tree of one class, kept in parallel int arrays instead of an
+    // object per node. A node is an index: kinds holds its NodeKind ordinal
+    // and its children are children[childStart .. childStart + childCount).
+    // The value of a terminal is the Keyword ordinal, the symbol character,
+    // the identifier id, the integer, or the index of a string constant
+    private final int[] kinds;
+    private final int[] values;
+    private final int[] childStart;
+    private final int[] childCount;
+    private final int[] children;
+    private final int nodeCount;
+    private final int root;
+    private final String[] names;
+    private final String[] strings;
+
+    private static final NodeKind[] NODE_KINDS = NodeKind.values();
+    private static final Keyword[] KEYWORDS = Keyword.values();
+
+    private SyntaxTree(Builder builder, int root, String[] names) {
+        this.kinds = builder.kinds;
+        this.values = builder.values;
+        this.childStart = builder.childStart;
+        this.childCount = builder.childCount;
+        this.children = builder.children;
+        this.nodeCount = builder.nodeCount;
+        this.root = root;
+        this.names = names;
+        this.strings = Arrays.copyOf(builder.strings, builder.stringCount);
+    }
+
+    public int root() {
+        return root;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int identifierCount() {
+        // identifier ids are below this
+        return names.length;
+    }
+
+    public NodeKind kind(int node) {
+        return NODE_KINDS[kinds[node]];
+    }
+
+    public int childCount(int node) {
+        return childCount[node];
+    }
+
+    public int child(int node, int index) {
+        return children[childStart[node] + index];
+    }
+
+    public Keyword keyword(int node) {
+        return KEYWORDS[values[node]];
+    }
+
+    public char symbol(int node) {
+        return (char) values[node];
+    }
+
+    public int identifierId(int node) {
+        // ids are the ones the tokenizer gave out, see JackTokenizer.identifierId
+        return values[node];
+    }
+
+    public String identifier(int node) {
+        return names[values[node]];
+    }
+
+    public int intVal(int node) {
+        return values[node];
+    }
+
+    public String stringVal(int node) {
+        return strings[values[node]];
+    }
+
+    public String text(int node) {
+        // the source text of a terminal, without quotes for strings
+        switch (kind(node)) {
+            case KEYWORD:
+                return keyword(node).text;
+            case SYMBOL:
+                return Character.toString(symbol(node));
+            case IDENTIFIER:
+                return identifier(node);
+            case INTEGER_CONSTANT:
+                return Integer.toString(intVal(node));
+            case STRING_CONSTANT:
+                return stringVal(node);
+            default:
+                throw new IllegalArgumentException(String.format("%s is not a terminal", kind(node)));
+        }
+    }
+
+    public void accept(SyntaxVisitor visitor) throws IOException {
+        accept(visitor, root);
+    }
+
+    public void accept(SyntaxVisitor visitor, int node) throws IOException {
+        // visits the subtree of the given node depth first
+        if (kind(node).isTerminal()) {
+            visitor.terminal(this, node);
+            return;
+        }
+        visitor.enter(this, node);
+        for (int i = 0; i < childCount[node]; i++) {
+            accept(visitor, children[childStart[node] + i]);
+        }
+        visitor.exit(this, node);
+    }
+
+    static class Builder {
+        // Used by the CompilationEngine to add nodes as it parses. The
+        // children of the open non terminals wait on the pending stack and
+        // are copied to the children array as one range when it is closed
+        private int[] kinds = new int[256];
+        private int[] values = new int[256];
+        private int[] childStart = new int[256];
+        private int[] childCount = new int[256];
+        private int nodeCount = 0;
+        private int[] children = new int[256];
+        private int childrenCount = 0;
+        private String[] strings = new String[16];
+        private int stringCount = 0;
+
+        private int[] pending = new int[64];
+        private int pendingCount = 0;
+        // for each open non terminal, its node and where its children
+        // start on the pending stack
+        private int[] openNodes = new int[32];
+        private int[] openMarks = new int[32];
+        private int depth = 0;
+
+        void open(NodeKind kind) {
+            if (depth == openNodes.length) {
+                openNodes = Arrays.copyOf(openNodes, depth * 2);
+                openMarks = Arrays.copyOf(openMarks, depth * 2);
+            }
+            openNodes[depth] = addNode(kind, 0);
+            openMarks[depth] = pendingCount;
+            depth++;
+        }
+
+        void close(NodeKind kind) {
+            depth--;
+            int node = openNodes[depth];
+            if (kinds[node] != kind.ordinal()) {
+                throw new IllegalStateException(String.format("closing %s while %s is open", kind, NODE_KINDS[kinds[node]]));
+            }
+            int mark = openMarks[depth];
+            int count = pendingCount - mark;
+            if (childrenCount + count > children.length) {
+                children = Arrays.copyOf(children, Math.max(children.length * 2, childrenCount + count));
+            }
+            System.arraycopy(pending, mark, children, childrenCount, count);
+            childStart[node] = childrenCount;
+            childCount[node] = count;
+            childrenCount += count;
+            pendingCount = mark;
+            push(node);
+        }
+
+        void keyword(Keyword keyword) {
+            push(addNode(NodeKind.KEYWORD, keyword.ordinal()));
+        }
+
+        void symbol(char symbol) {
+            push(addNode(NodeKind.SYMBOL, symbol));
+        }
+
+        void identifier(int id) {
+            push(addNode(NodeKind.IDENTIFIER, id));
+        }
+
+        void integerConstant(int value) {
+            push(addNode(NodeKind.INTEGER_CONSTANT, value));
+        }
+
+        void stringConstant(String value) {
+            if (stringCount == strings.length) {
+                strings = Arrays.copyOf(strings, stringCount * 2);
+            }
+            strings[stringCount] = value;
+            push(addNode(NodeKind.STRING_CONSTANT, stringCount));
+            stringCount++;
+        }
+
+        SyntaxTree build(String[] names) {
+            // names are the identifier names by id, as given by the tokenizer
+            if (depth != 0 || pendingCount != 1) {
+                throw new IllegalStateException("the tree is not complete");
+            }
+            return new SyntaxTree(this, pending[0], names);
+        }
+
+        private int addNode(NodeKind kind, int value) {
+            if (nodeCount == kinds.length) {
+                kinds = Arrays.copyOf(kinds, nodeCount * 2);
+                values = Arrays.copyOf(values, nodeCount * 2);
+                childStart = Arrays.copyOf(childStart, nodeCount * 2);
+                childCount = Arrays.copyOf(childCount, nodeCount * 2);
+            }
+            kinds[nodeCount] = kind.ordinal();
+            values[nodeCount] = value;
+            return nodeCount++;
+        }
+
+        private void push(int node) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+            }
+            pending[pendingCount++] = node;
+        }
+    }
+}
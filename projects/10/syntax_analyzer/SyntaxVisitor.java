@@ -0,0 +1,15 @@
+package syntax_analyzer;
+
+import java.io.IOException;
+
+public interface SyntaxVisitor {
+    // Receives the nodes of a SyntaxTree in source order, see SyntaxTree.accept
+
+    // a non terminal, before any of its children
+    void enter(SyntaxTree tree, int node) throws IOException;
+
+    // a non terminal, after all of its children
+    void exit(SyntaxTree tree, int node) throws IOException;
+
+    void terminal(SyntaxTree tree, int node) throws IOException;
+}
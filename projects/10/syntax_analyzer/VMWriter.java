@@ -0,0 +1,61 @@
+package syntax_analyzer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class VMWriter implements Closeable {
+    // Writes VM commands, one per line, in the format read by the VM translator
+    private final BufferedWriter writer;
+
+    public VMWriter(String outputFile) throws IOException {
+        this.writer = new BufferedWriter(new FileWriter(outputFile));
+    }
+
+    public void writePush(String segment, int index) throws IOException {
+        writeLine("push " + segment + " " + index);
+    }
+
+    public void writePop(String segment, int index) throws IOException {
+        writeLine("pop " + segment + " " + index);
+    }
+
+    public void writeArithmetic(String command) throws IOException {
+        // one of add, sub, neg, eq, gt, lt, and, or, not
+        writeLine(command);
+    }
+
+    public void writeLabel(String label) throws IOException {
+        writeLine("label " + label);
+    }
+
+    public void writeGoto(String label) throws IOException {
+        writeLine("goto " + label);
+    }
+
+    public void writeIf(String label) throws IOException {
+        writeLine("if-goto " + label);
+    }
+
+    public void writeCall(String name, int argumentCount) throws IOException {
+        writeLine("call " + name + " " + argumentCount);
+    }
+
+    public void writeFunction(String name, int localCount) throws IOException {
+        writeLine("function " + name + " " + localCount);
+    }
+
+    public void writeReturn() throws IOException {
+        writeLine("return");
+    }
+
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    private void writeLine(String command) throws IOException {
+        this.writer.write(command);
+        this.writer.write('\n');
+    }
+}
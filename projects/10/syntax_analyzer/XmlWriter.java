@@ -0,0 +1,66 @@
+package syntax_analyzer;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class XmlWriter implements SyntaxVisitor, Closeable {
+    // Writes the XML form of a parse tree: every non terminal on lines of
+    // its own and every terminal on one indented line. All escaping of
+    // text is done here, tokens are passed in as they appear in the source
+    private final FileWriter writer;
+
+    public XmlWriter(String outputFile) throws IOException {
+        this.writer = new FileWriter(outputFile);
+    }
+
+    public void enter(SyntaxTree tree, int node) throws IOException {
+        open(tree.kind(node).tag);
+    }
+
+    public void exit(SyntaxTree tree, int node) throws IOException {
+        close(tree.kind(node).tag);
+    }
+
+    public void terminal(SyntaxTree tree, int node) throws IOException {
+        terminal(tree.kind(node).tag, tree.text(node));
+    }
+
+    public void open(String tag) throws IOException {
+        this.writer.write("<" + tag + ">\n");
+    }
+
+    public void close(String tag) throws IOException {
+        this.writer.write("</" + tag + ">\n");
+    }
+
+    public void terminal(String tag, String text) throws IOException {
+        this.writer.write(String.format("    <%s> %s </%s>\n", tag, escape(text), tag));
+    }
+
+    public void close() throws IOException {
+        this.writer.close();
+    }
+
+    private static String escape(String text) {
+        // only <, > and & can appear in Jack tokens that need escaping,
+        // string constants can hold any of them
+        if (text.indexOf('<') < 0 && text.indexOf('>') < 0 && text.indexOf('&') < 0) {
+            return text;
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                escaped.append("&lt;");
+            } else if (c == '>') {
+                escaped.append("&gt;");
+            } else if (c == '&') {
+                escaped.append("&amp;");
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,344 @@
+package emulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+
+class BlockCompiler {
+    // Translates basic blocks of Hack code into hidden classes implementing
+    // CompiledBlock. A block starts where execution entered it and runs up
+    // to and including the first instruction with a jump field, so control
+    // only leaves through its end. The A and D registers live in JVM locals
+    // for the whole block, and the jump target is returned as the next pc,
+    // which lets a computed jump go back to the emulator's dispatch loop
+    static final int MAX_BLOCK_LENGTH = 256;
+
+    // class file version 49 is verified by type inference, so the
+    // generated code does not need a StackMapTable
+    private static final int CLASS_VERSION = 49;
+
+    // constant pool indexes, see writeClass
+    private static final int CP_THIS_CLASS = 2;
+    private static final int CP_OBJECT_CLASS = 4;
+    private static final int CP_INTERFACE = 6;
+    private static final int CP_INIT_NAME = 7;
+    private static final int CP_INIT_TYPE = 8;
+    private static final int CP_OBJECT_INIT = 10;
+    private static final int CP_EXECUTE_NAME = 11;
+    private static final int CP_EXECUTE_TYPE = 12;
+    private static final int CP_CODE = 13;
+    private static final int CP_COUNT = 14;
+
+    // locals of the execute method
+    private static final int RAM = 1;
+    private static final int REGISTERS = 2;
+    private static final int A = 3;
+    private static final int D = 4;
+    private static final int OUT = 5;
+    private static final int TARGET = 6;
+
+    private static final int ADDRESS_MASK = Emulator.MEMORY_SIZE - 1;
+
+    private final Instruction[] rom;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    BlockCompiler(Instruction[] rom) {
+        this.rom = rom;
+    }
+
+    int blockLength(int start) {
+        // number of instructions in the block starting at start
+        int pc = start;
+        while (true) {
+            Instruction instruction = rom[pc];
+            pc++;
+            if (!instruction.address() && instruction.jump() != 0) {
+                break;
+            }
+            if (pc == rom.length || pc - start == MAX_BLOCK_LENGTH) {
+                break;
+            }
+        }
+        return pc - start;
+    }
+
+    CompiledBlock compile(int start) {
+        // returns null if the block uses a comp code that only the
+        // interpreter knows how to execute
+        int length = blockLength(start);
+        for (int pc = start; pc < start + length; pc++) {
+            if (!rom[pc].address() && !supported(rom[pc].comp())) {
+                return null;
+            }
+        }
+        try {
+            byte[] classFile = writeClass(writeExecute(start, length));
+            Class<?> blockClass = lookup.defineHiddenClass(classFile, true).lookupClass();
+            return (CompiledBlock) lookup.findConstructor(blockClass, MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException(String.format("could not compile the block at %d", start), e);
+        }
+    }
+
+    private byte[] writeExecute(int start, int length) {
+        Code code = new Code();
+        // load the registers into locals
+        code.op(ALOAD_2).op(ICONST_0).op(IALOAD).store(A);
+        code.op(ALOAD_2).op(ICONST_1).op(IALOAD).store(D);
+
+        int last = start + length - 1;
+        for (int pc = start; pc <= last; pc++) {
+            Instruction instruction = rom[pc];
+            if (instruction.address()) {
+                code.constant(instruction.value()).store(A);
+                continue;
+            }
+            writeComp(code, instruction.comp());
+            code.op(I2S).store(OUT);
+            int dest = instruction.dest();
+            if ((dest & Instruction.DEST_M) != 0) {
+                code.op(ALOAD_1);
+                loadAddress(code);
+                code.load(OUT).op(SASTORE);
+            }
+            if (instruction.jump() != 0 && (dest & Instruction.DEST_A) != 0) {
+                // the jump goes to A as it was before this instruction
+                code.load(A).store(TARGET);
+            }
+            if ((dest & Instruction.DEST_A) != 0) {
+                code.load(OUT).store(A);
+            }
+            if ((dest & Instruction.DEST_D) != 0) {
+                code.load(OUT).store(D);
+            }
+        }
+
+        // store the registers back and return the next pc
+        code.op(ALOAD_2).op(ICONST_0).load(A).op(IASTORE);
+        code.op(ALOAD_2).op(ICONST_1).load(D).op(IASTORE);
+        Instruction exit = rom[last];
+        int fallThrough = (last + 1) & ADDRESS_MASK;
+        if (exit.address() || exit.jump() == 0) {
+            code.constant(fallThrough).op(IRETURN);
+            return code.bytes();
+        }
+        int target = (exit.dest() & Instruction.DEST_A) != 0 ? TARGET : A;
+        if (exit.jump() != 7) {
+            // if the condition holds skip the fall through return, which is
+            // constant (3 bytes) and ireturn (1 byte) after the branch
+            code.load(OUT).branch(CONDITIONAL_JUMPS[exit.jump()], 3 + 3 + 1);
+            code.constant(fallThrough).op(IRETURN);
+        }
+        code.load(target).constant(ADDRESS_MASK).op(IAND).op(IRETURN);
+        return code.bytes();
+    }
+
+    private static final int[] CONDITIONAL_JUMPS = {
+        0, Code.IFGT, Code.IFEQ, Code.IFGE, Code.IFLT, Code.IFNE, Code.IFLE, 0
+    };
+
+    private static boolean supported(int comp) {
+        switch (comp) {
+            case 0b0101010: case 0b0111111: case 0b0111010:
+            case 0b0001100: case 0b0110000: case 0b1110000:
+            case 0b0001101: case 0b0110001: case 0b1110001:
+            case 0b0001111: case 0b0110011: case 0b1110011:
+            case 0b0011111: case 0b0110111: case 0b1110111:
+            case 0b0001110: case 0b0110010: case 0b1110010:
+            case 0b0000010: case 0b1000010: case 0b0010011: case 0b1010011:
+            case 0b0000111: case 0b1000111: case 0b0000000: case 0b1000000:
+            case 0b0010101: case 0b1010101:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void writeComp(Code code, int comp) {
+        // leaves the (not yet truncated) ALU output on the operand stack
+        switch (comp) {
+            case 0b0101010: code.op(ICONST_0); break;
+            case 0b0111111: code.op(ICONST_1); break;
+            case 0b0111010: code.op(ICONST_M1); break;
+            case 0b0001100: code.load(D); break;
+            case 0b0110000: code.load(A); break;
+            case 0b1110000: loadM(code); break;
+            case 0b0001101: code.load(D).op(ICONST_M1).op(IXOR); break;
+            case 0b0110001: code.load(A).op(ICONST_M1).op(IXOR); break;
+            case 0b1110001: loadM(code); code.op(ICONST_M1).op(IXOR); break;
+            case 0b0001111: code.load(D).op(INEG); break;
+            case 0b0110011: code.load(A).op(INEG); break;
+            case 0b1110011: loadM(code); code.op(INEG); break;
+            case 0b0011111: code.load(D).op(ICONST_1).op(IADD); break;
+            case 0b0110111: code.load(A).op(ICONST_1).op(IADD); break;
+            case 0b1110111: loadM(code); code.op(ICONST_1).op(IADD); break;
+            case 0b0001110: code.load(D).op(ICONST_1).op(ISUB); break;
+            case 0b0110010: code.load(A).op(ICONST_1).op(ISUB); break;
+            case 0b1110010: loadM(code); code.op(ICONST_1).op(ISUB); break;
+            case 0b0000010: code.load(D).load(A).op(IADD); break;
+            case 0b1000010: code.load(D); loadM(code); code.op(IADD); break;
+            case 0b0010011: code.load(D).load(A).op(ISUB); break;
+            case 0b1010011: code.load(D); loadM(code); code.op(ISUB); break;
+            case 0b0000111: code.load(A).load(D).op(ISUB); break;
+            case 0b1000111: loadM(code); code.load(D).op(ISUB); break;
+            case 0b0000000: code.load(D).load(A).op(IAND); break;
+            case 0b1000000: code.load(D); loadM(code); code.op(IAND); break;
+            case 0b0010101: code.load(D).load(A).op(IOR); break;
+            case 0b1010101: code.load(D); loadM(code); code.op(IOR); break;
+            default: throw new IllegalArgumentException("unsupported comp " + comp);
+        }
+    }
+
+    private static void loadM(Code code) {
+        code.op(ALOAD_1);
+        loadAddress(code);
+        code.op(SALOAD);
+    }
+
+    private static void loadAddress(Code code) {
+        code.load(A).constant(ADDRESS_MASK).op(IAND);
+    }
+
+    private static byte[] writeClass(byte[] execute) throws IOException {
+        // a final class with a no argument constructor and execute
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_VERSION);
+
+        out.writeShort(CP_COUNT);
+        writeUtf8(out, "emulator/GeneratedBlock");              // 1
+        writeClassEntry(out, 1);                                // 2
+        writeUtf8(out, "java/lang/Object");                     // 3
+        writeClassEntry(out, 3);                                // 4
+        writeUtf8(out, "emulator/CompiledBlock");               // 5
+        writeClassEntry(out, 5);                                // 6
+        writeUtf8(out, "<init>");                               // 7
+        writeUtf8(out, "()V");                                  // 8
+        out.writeByte(12);                                      // 9 name and type
+        out.writeShort(CP_INIT_NAME);
+        out.writeShort(CP_INIT_TYPE);
+        out.writeByte(10);                                      // 10 method ref
+        out.writeShort(CP_OBJECT_CLASS);
+        out.writeShort(9);
+        writeUtf8(out, "execute");                              // 11
+        writeUtf8(out, "([S[I)I");                              // 12
+        writeUtf8(out, "Code");                                 // 13
+
+        out.writeShort(0x0031); // public final super
+        out.writeShort(CP_THIS_CLASS);
+        out.writeShort(CP_OBJECT_CLASS);
+        out.writeShort(1);
+        out.writeShort(CP_INTERFACE);
+        out.writeShort(0); // fields
+
+        out.writeShort(2); // methods
+        byte[] init = new Code().op(ALOAD_0).op(INVOKESPECIAL).u2(CP_OBJECT_INIT).op(RETURN).bytes();
+        writeMethod(out, CP_INIT_NAME, CP_INIT_TYPE, 1, 1, init);
+        writeMethod(out, CP_EXECUTE_NAME, CP_EXECUTE_TYPE, 6, TARGET + 1, execute);
+
+        out.writeShort(0); // class attributes
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int type, int maxStack, int maxLocals, byte[] code)
+            throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(type);
+        out.writeShort(1);
+        out.writeShort(CP_CODE);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0); // exception table
+        out.writeShort(0); // code attributes
+    }
+
+    private static void writeUtf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void writeClassEntry(DataOutputStream out, int name) throws IOException {
+        out.writeByte(7);
+        out.writeShort(name);
+    }
+
+    // the opcodes used by generated code
+    private static final int ICONST_M1 = 0x02;
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int IALOAD = 0x2e;
+    private static final int SALOAD = 0x35;
+    private static final int IASTORE = 0x4f;
+    private static final int SASTORE = 0x56;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int INEG = 0x74;
+    private static final int IAND = 0x7e;
+    private static final int IOR = 0x80;
+    private static final int IXOR = 0x82;
+    private static final int I2S = 0x93;
+    private static final int IRETURN = 0xac;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    private static class Code {
+        // a growable buffer of bytecode
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IFGT = 0x9d;
+        static final int IFLE = 0x9e;
+
+        private static final int ILOAD = 0x15;
+        private static final int ISTORE = 0x36;
+        private static final int SIPUSH = 0x11;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        Code op(int opcode) {
+            bytes.write(opcode);
+            return this;
+        }
+
+        Code u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+            return this;
+        }
+
+        Code load(int local) {
+            return op(ILOAD).op(local);
+        }
+
+        Code store(int local) {
+            return op(ISTORE).op(local);
+        }
+
+        Code constant(int value) {
+            // always 3 bytes, so branch offsets can be computed up front
+            return op(SIPUSH).u2(value);
+        }
+
+        Code branch(int opcode, int offset) {
+            // offset is relative to the start of the branch instruction
+            return op(opcode).u2(offset);
+        }
+
+        byte[] bytes() {
+            return bytes.toByteArray();
+        }
+    }
+}
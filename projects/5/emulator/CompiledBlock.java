@@ -0,0 +1,10 @@
+package emulator;
+
+
+interface CompiledBlock {
+    // a basic block of the ROM translated to JVM bytecode. Runs every
+    // instruction of the block against ram and the A and D registers in
+    // registers[0] and registers[1], and returns the address of the next
+    // instruction to execute
+    int execute(short[] ram, int[] registers);
+}
@@ -0,0 +1,208 @@
+package emulator;
+
+
+public class Emulator {
+    // Executes Hack machine code. The ROM is decoded into Instruction
+    // records up front and the run loop only dispatches on those, the
+    // registers are kept as sign extended 16-bit values in ints
+    public static final int MEMORY_SIZE = 32 * 1024;
+    // a block is compiled once execution has entered it this many times
+    private static final int HOT_THRESHOLD = 1000;
+
+    private final Instruction[] rom = new Instruction[MEMORY_SIZE];
+    private final short[] ram = new short[MEMORY_SIZE];
+    // A and D, kept in an array so compiled blocks can share them
+    private final int[] registers = new int[2];
+    private int pc = 0;
+    private long cycles = 0;
+
+    // with the JIT enabled, the entries of a block are counted and hot
+    // blocks run as compiled code. A block is only entered at its first
+    // instruction, so jumps into the middle of one start a block of their own
+    private final BlockCompiler compiler;
+    private final CompiledBlock[] compiled;
+    private final int[] blockLengths;
+    private final int[] entries;
+
+    public Emulator(short[] program) {
+        // an emulator that only interprets
+        this(program, false);
+    }
+
+    public Emulator(short[] program, boolean jit) {
+        if (program.length > MEMORY_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                "program has %d instructions, the ROM holds %d", program.length, MEMORY_SIZE
+            ));
+        }
+        // words past the end of the program read as 0, which is @0
+        Instruction empty = Instruction.decode(0);
+        for (int i = 0; i < MEMORY_SIZE; i++) {
+            rom[i] = i < program.length ? Instruction.decode(program[i]) : empty;
+        }
+        if (jit) {
+            compiler = new BlockCompiler(rom);
+            compiled = new CompiledBlock[MEMORY_SIZE];
+            blockLengths = new int[MEMORY_SIZE];
+            entries = new int[MEMORY_SIZE];
+        } else {
+            compiler = null;
+            compiled = null;
+            blockLengths = null;
+            entries = null;
+        }
+    }
+
+    public long run(long maxCycles) {
+        // executes up to maxCycles instructions and returns how many ran.
+        // Hack programs end in an infinite loop, so the caller decides
+        // when a program has run long enough
+        long executed = compiler == null ? interpret(maxCycles, false) : runTiered(maxCycles);
+        cycles += executed;
+        return executed;
+    }
+
+    private long runTiered(long maxCycles) {
+        // dispatches one block at a time, to compiled code when there is
+        // some and enough cycles are left to run the whole block
+        long executed = 0;
+        while (executed < maxCycles) {
+            int start = pc;
+            CompiledBlock block = compiled[start];
+            if (block != null && maxCycles - executed >= blockLengths[start]) {
+                pc = block.execute(ram, registers);
+                executed += blockLengths[start];
+                continue;
+            }
+            if (block == null && ++entries[start] == HOT_THRESHOLD) {
+                // blocks that cannot be compiled stay with the interpreter
+                block = compiler.compile(start);
+                if (block != null) {
+                    compiled[start] = block;
+                    blockLengths[start] = compiler.blockLength(start);
+                    continue;
+                }
+            }
+            executed += interpret(maxCycles - executed, true);
+        }
+        return executed;
+    }
+
+    private long interpret(long maxCycles, boolean singleBlock) {
+        // runs up to maxCycles instructions, stopping after the first
+        // instruction with a jump field when singleBlock is set
+        Instruction[] rom = this.rom;
+        short[] ram = this.ram;
+        int a = registers[0];
+        int d = registers[1];
+        int pc = this.pc;
+        long executed = 0;
+        while (executed < maxCycles) {
+            Instruction instruction = rom[pc];
+            executed++;
+            if (instruction.address()) {
+                a = instruction.value();
+                pc = (pc + 1) & (MEMORY_SIZE - 1);
+                if (singleBlock && executed == BlockCompiler.MAX_BLOCK_LENGTH) {
+                    break;
+                }
+                continue;
+            }
+            int m = ram[a & (MEMORY_SIZE - 1)];
+            int out = (short) compute(instruction.comp(), a, d, m);
+            int dest = instruction.dest();
+            if ((dest & Instruction.DEST_M) != 0) {
+                ram[a & (MEMORY_SIZE - 1)] = (short) out;
+            }
+            int jump = instruction.jump();
+            boolean taken = jump != 0 && (jump & (out < 0 ? 4 : out == 0 ? 2 : 1)) != 0;
+            // a jump uses the A register as it was before this instruction
+            int target = a;
+            if ((dest & Instruction.DEST_A) != 0) {
+                a = out;
+            }
+            if ((dest & Instruction.DEST_D) != 0) {
+                d = out;
+            }
+            pc = taken ? target & (MEMORY_SIZE - 1) : (pc + 1) & (MEMORY_SIZE - 1);
+            if (singleBlock && (jump != 0 || executed == BlockCompiler.MAX_BLOCK_LENGTH)) {
+                break;
+            }
+        }
+        registers[0] = a;
+        registers[1] = d;
+        this.pc = pc;
+        return executed;
+    }
+
+    private static int compute(int comp, int a, int d, int m) {
+        // the comp field with its a bit, y is A or M depending on that bit
+        switch (comp) {
+            case 0b0101010: return 0;
+            case 0b0111111: return 1;
+            case 0b0111010: return -1;
+            case 0b0001100: return d;
+            case 0b0110000: return a;
+            case 0b1110000: return m;
+            case 0b0001101: return ~d;
+            case 0b0110001: return ~a;
+            case 0b1110001: return ~m;
+            case 0b0001111: return -d;
+            case 0b0110011: return -a;
+            case 0b1110011: return -m;
+            case 0b0011111: return d + 1;
+            case 0b0110111: return a + 1;
+            case 0b1110111: return m + 1;
+            case 0b0001110: return d - 1;
+            case 0b0110010: return a - 1;
+            case 0b1110010: return m - 1;
+            case 0b0000010: return d + a;
+            case 0b1000010: return d + m;
+            case 0b0010011: return d - a;
+            case 0b1010011: return d - m;
+            case 0b0000111: return a - d;
+            case 0b1000111: return m - d;
+            case 0b0000000: return d & a;
+            case 0b1000000: return d & m;
+            case 0b0010101: return d | a;
+            case 0b1010101: return d | m;
+            default: return alu(comp, d, (comp & 0x40) != 0 ? m : a);
+        }
+    }
+
+    private static int alu(int comp, int x, int y) {
+        // the comp codes the assembler never emits still do what the Hack
+        // ALU would do with their zx, nx, zy, ny, f and no bits
+        if ((comp & 0x20) != 0) x = 0;
+        if ((comp & 0x10) != 0) x = ~x;
+        if ((comp & 0x08) != 0) y = 0;
+        if ((comp & 0x04) != 0) y = ~y;
+        int out = (comp & 0x02) != 0 ? x + y : x & y;
+        if ((comp & 0x01) != 0) out = ~out;
+        return out;
+    }
+
+    public void reset() {
+        // jumps back to the first instruction, RAM keeps its contents
+        pc = 0;
+        registers[0] = 0;
+        registers[1] = 0;
+    }
+
+    public int peek(int address) {
+        return ram[address];
+    }
+
+    public void poke(int address, int value) {
+        ram[address] = (short) value;
+    }
+
+    public int pc() {
+        return pc;
+    }
+
+    public long cycles() {
+        // number of instructions executed since the emulator was created
+        return cycles;
+    }
+}
@@ -0,0 +1,22 @@
+package emulator;
+
+
+record Instruction(boolean address, int value, int comp, int dest, int jump) {
+    // A Hack instruction decoded once when the ROM is loaded, so the
+    // emulator does not have to pick the fields out of the word on every
+    // cycle. For an A instruction only value is used, for a C instruction
+    // comp holds the a bit and the six ALU control bits, dest the three
+    // destination bits (A, D, M) and jump the three jump bits (<, =, >)
+
+    static final int DEST_A = 4;
+    static final int DEST_D = 2;
+    static final int DEST_M = 1;
+
+    static Instruction decode(int word) {
+        word &= 0xFFFF;
+        if ((word & 0x8000) == 0) {
+            return new Instruction(true, word, 0, 0, 0);
+        }
+        return new Instruction(false, 0, (word >> 6) & 0x7F, (word >> 3) & 0x7, word & 0x7);
+    }
+}
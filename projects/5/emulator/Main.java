@@ -0,0 +1,51 @@
+package emulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Main {
+    public static void main(String args[]) throws IOException {
+        String inputFile = args[0];
+
+        // optional arguments after the input file:
+        // --cycles N runs N instructions, defaulting to ten million
+        // --jit compiles frequently run blocks to JVM bytecode
+        // address=value sets a RAM word before the program starts
+        // address prints a RAM word after the program has run
+        long cycles = 10_000_000;
+        boolean jit = false;
+        List<int[]> assignments = new ArrayList<int[]>();
+        List<Integer> printed = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--cycles")) {
+                cycles = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--jit")) {
+                jit = true;
+            } else if (args[i].contains("=")) {
+                String[] assignment = args[i].split("=");
+                assignments.add(new int[] {Integer.parseInt(assignment[0]), Integer.parseInt(assignment[1])});
+            } else {
+                printed.add(Integer.parseInt(args[i]));
+            }
+        }
+
+        short[] program = Rom.load(inputFile);
+        Emulator emulator = new Emulator(program, jit);
+        for (int[] assignment : assignments) {
+            emulator.poke(assignment[0], assignment[1]);
+        }
+
+        long start = System.nanoTime();
+        long executed = emulator.run(cycles);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format(
+            "%d instructions, %d cycles in %.2f ms (%.1f M cycles/sec)",
+            program.length, executed, elapsed / 1e6, executed * 1e3 / Math.max(elapsed, 1)
+        ));
+        for (int address : printed) {
+            System.out.println(String.format("RAM[%d] = %d", address, emulator.peek(address)));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package emulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+
+public class Rom {
+    // Reads the instruction words of an assembled program, either the
+    // textual .hack format (one 16 digit binary word per line) or the raw
+    // little-endian .hackb image written by the assembler's --binary flag
+
+    public static short[] load(String fileName) throws IOException {
+        byte[] bytes = Files.readAllBytes(Paths.get(fileName));
+        if (fileName.endsWith(".hackb")) {
+            short[] words = new short[bytes.length / 2];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(words);
+            return words;
+        }
+        return parseText(bytes, fileName);
+    }
+
+    private static short[] parseText(byte[] bytes, String fileName) throws IOException {
+        short[] words = new short[1024];
+        int count = 0;
+        int word = 0;
+        int digits = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            int b = i < bytes.length ? bytes[i] : '\n';
+            if (b == '0' || b == '1') {
+                word = (word << 1) | (b - '0');
+                digits++;
+            } else if (b == '\n') {
+                if (digits == 16) {
+                    if (count == words.length) {
+                        words = Arrays.copyOf(words, count * 2);
+                    }
+                    words[count++] = (short) word;
+                } else if (digits != 0) {
+                    throw new IOException(String.format(
+                        "%s: line %d is not a 16 bit word", fileName, count + 1
+                    ));
+                }
+                word = 0;
+                digits = 0;
+            } else if (b != '\r' && b != ' ' && b != '\t') {
+                throw new IOException(String.format(
+                    "%s: unexpected character '%c' in word %d", fileName, (char) b, count + 1
+                ));
+            }
+        }
+        return Arrays.copyOf(words, count);
+    }
+}
@@ -56,9 +56,25 @@ public class Code {
 		entry("D&M","1000000"),
 		entry("D|M","1010101"),
 		entry("D-1","0001110"),
-		entry("A-1","0110010")
+		entry("A-1","0110010"),
+		// commutative spellings of the binary operations
+		entry("A+D","0000010"),
+		entry("A&D","0000000"),
+		entry("A|D","0010101"),
+		entry("M+D","1000010"),
+		entry("M&D","1000000"),
+		entry("M|D","1010101")
     );
 
+    // The maps above compiled into small open addressing tables keyed by
+    // the mnemonic's characters packed into an int (a mnemonic has at most
+    // four). Each slot is a key followed by its code, so looking up a
+    // CharSequence needs no String and encoding creates no garbage
+    private static final int TABLE_SLOTS = 128;
+    private static final int[] jumpTable = buildTable(jumpMap);
+    private static final int[] destTable = buildTable(destMap);
+    private static final int[] compTable = buildTable(compMap);
+
 
     public static String dest(String mnemonic) {
         // returns the binary code of the dest mnemonic
@@ -74,4 +90,96 @@ public class Code {
         // returns the binary code of the jump mnemonic
         return jumpMap.get(mnemonic);
     }
+
+    public static short encodeC(CharSequence dest, CharSequence comp, CharSequence jump) {
+        // returns the 16-bit machine code of a C instruction
+        // an empty dest or jump is the same as "null"
+        int destBits = dest.length() == 0 ? 0 : lookup(destTable, dest, 0, dest.length());
+        int compBits = lookup(compTable, comp, 0, comp.length());
+        int jumpBits = jump.length() == 0 ? 0 : lookup(jumpTable, jump, 0, jump.length());
+        if (destBits < 0 || compBits < 0 || jumpBits < 0) {
+            throw new IllegalArgumentException(
+                String.format("Invalid C instruction: %s=%s;%s", dest, comp, jump)
+            );
+        }
+        return encode(destBits, compBits, jumpBits);
+    }
+
+    public static short encodeC(CharSequence instruction) {
+        // returns the 16-bit machine code of a whole dest=comp;jump
+        // instruction, finding the fields in place instead of splitting it
+        int length = instruction.length();
+        int equals = -1;
+        int semicolon = length;
+        for (int i = 0; i < length; i++) {
+            char c = instruction.charAt(i);
+            if (c == '=' && equals < 0) {
+                equals = i;
+            } else if (c == ';') {
+                semicolon = i;
+                break;
+            }
+        }
+
+        int destBits = equals < 0 ? 0 : lookup(destTable, instruction, 0, equals);
+        int compBits = lookup(compTable, instruction, equals + 1, semicolon);
+        int jumpBits = semicolon == length ? 0 : lookup(jumpTable, instruction, semicolon + 1, length);
+        if (destBits < 0 || compBits < 0 || jumpBits < 0) {
+            throw new IllegalArgumentException("Invalid C instruction: " + instruction);
+        }
+        return encode(destBits, compBits, jumpBits);
+    }
+
+    private static short encode(int destBits, int compBits, int jumpBits) {
+        return (short) (0b111 << 13 | compBits << 6 | destBits << 3 | jumpBits);
+    }
+
+    private static int[] buildTable(Map<String, String> map) {
+        int[] table = new int[2 * TABLE_SLOTS];
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            String mnemonic = entry.getKey();
+            int key = pack(mnemonic, 0, mnemonic.length());
+            int slot = slot(key);
+            while (table[2 * slot] != 0) {
+                slot = (slot + 1) % TABLE_SLOTS;
+            }
+            table[2 * slot] = key;
+            table[2 * slot + 1] = Integer.parseInt(entry.getValue(), 2);
+        }
+        return table;
+    }
+
+    private static int lookup(int[] table, CharSequence mnemonic, int start, int end) {
+        // returns the code of mnemonic[start, end) or -1 if it is unknown
+        if (end <= start || end - start > 4) {
+            return -1;
+        }
+        int key = pack(mnemonic, start, end);
+        int slot = slot(key);
+        while (table[2 * slot] != 0) {
+            if (table[2 * slot] == key) {
+                return table[2 * slot + 1];
+            }
+            slot = (slot + 1) % TABLE_SLOTS;
+        }
+        return -1;
+    }
+
+    private static int pack(CharSequence mnemonic, int start, int end) {
+        // mnemonics are ASCII so each character fits in a byte. Anything
+        // else packs to 0, which is never a key
+        int key = 0;
+        for (int i = start; i < end; i++) {
+            char c = mnemonic.charAt(i);
+            if (c > 0xFF) {
+                return 0;
+            }
+            key = key << 8 | c;
+        }
+        return key;
+    }
+
+    private static int slot(int key) {
+        return (key * 0x9E3779B9 >>> 16) % TABLE_SLOTS;
+    }
 }
@@ -0,0 +1,77 @@
+package assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+public class HackWriter {
+    // the 8 ASCII binary digits of every byte value, so a 16-bit word is
+    // rendered by copying two entries instead of formatting a String
+    private static final byte[] BYTE_DIGITS = new byte[256 * 8];
+    static {
+        for (int value = 0; value < 256; value++) {
+            for (int bit = 0; bit < 8; bit++) {
+                BYTE_DIGITS[value * 8 + bit] = (byte) (((value >> (7 - bit)) & 1) == 1 ? '1' : '0');
+            }
+        }
+    }
+
+    private static final int TEXT_WORD_BYTES = 17; // 16 digits and a newline
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean binary;
+
+    public HackWriter(String outputFile) throws IOException {
+        // opens the output file and gets ready to write to it. A file
+        // ending in .hackb gets a raw ROM image of little-endian 16-bit
+        // words, anything else gets the textual .hack format
+        this.binary = outputFile.endsWith(".hackb");
+        this.channel = FileChannel.open(
+            Paths.get(outputFile),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING
+        );
+        this.buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void writeWord(int word) throws IOException {
+        // appends one instruction word to the output
+        if (buffer.remaining() < TEXT_WORD_BYTES) {
+            flush();
+        }
+        if (binary) {
+            buffer.putShort((short) word);
+        } else {
+            buffer.put(BYTE_DIGITS, ((word >> 8) & 0xFF) * 8, 8);
+            buffer.put(BYTE_DIGITS, (word & 0xFF) * 8, 8);
+            buffer.put((byte) '\n');
+        }
+    }
+
+    public void writeWords(int[] words, int count) throws IOException {
+        // appends the first count words of the array to the output
+        for (int i = 0; i < count; i++) {
+            writeWord(words[i]);
+        }
+    }
+
+    public void close() throws IOException {
+        // writes out anything still buffered and closes the output file
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,12 +1,38 @@
 package assembler;
 
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class Main {
    public static void main(String args[]) throws FileNotFoundException, IOException {  
       String inputFile = args[0];
+
+      // optional flags after the input file:
+      // --stream reads the source once and back-patches labels
+      // instead of making two passes over the whole file
+      // --binary writes a raw little-endian ROM image (.hackb) instead of text
+      boolean streaming = false;
+      String extension = ".hack";
+      for (int i = 1; i < args.length; i++) {
+         if (args[i].equals("--stream")) {
+            streaming = true;
+         } else if (args[i].equals("--binary")) {
+            extension = ".hackb";
+         }
+      }
+      String outputFile = inputFile.split("\\.")[0] + extension;
+
+      if (streaming) {
+         assembleStreaming(inputFile, outputFile);
+      } else {
+         assembleTwoPass(inputFile, outputFile);
+      }
+   }
+
+   private static void assembleTwoPass(String inputFile, String outputFile) throws FileNotFoundException, IOException {
       Parser parser = new Parser(inputFile);
 
       // First pass fills the symbol table with all the program labels
@@ -24,18 +50,14 @@ public class Main {
       }
 
       // Second pass handles variables and generates machine code
-      String outputFile = inputFile.split("\\.")[0] + ".hack";
-      FileWriter writer = new FileWriter(outputFile);
+      HackWriter writer = new HackWriter(outputFile);
 
       int currentRamAddress = 16; // the next available RAM address
       parser.reset();
       while (parser.hasMoreCommands()) {
          parser.advance();
          if (parser.commandType() == CommandType.C_COMMAND) {
-            String comp = Code.comp(parser.comp());
-            String dest = Code.dest(parser.dest());
-            String jump = Code.jump(parser.jump());
-            writer.write(String.format("111%s%s%s\n", comp, dest, jump));
+            writer.writeWord(Code.encodeC(parser.command()));
          } else if (parser.commandType() == CommandType.A_COMMAND) {
             // try to parse the symbol as an integer
             Integer symbolInteger = null;
@@ -53,13 +75,72 @@ public class Main {
                   currentRamAddress++;
                }
             }
-            String symbolBinary = String.format(
-               "%16s", 
-               Integer.toBinaryString(symbolInteger)).replace(" ", "0"
-            );
-            writer.write(String.format("%s\n", symbolBinary));
+            writer.writeWord(symbolInteger);
+         }
+      }
+      writer.close();
+   }
+
+   private static void assembleStreaming(String inputFile, String outputFile) throws FileNotFoundException, IOException {
+      Parser parser = new Parser(inputFile, true);
+      SymbolTable symbolTable = new SymbolTable();
+
+      // instruction words are collected in a growable buffer. A instructions
+      // naming a symbol that is not in the table yet (a forward label or a
+      // variable) are emitted as placeholders and remembered as fixups
+      int[] words = new int[1024];
+      int wordCount = 0;
+      int[] fixupAddresses = new int[64];
+      List<String> fixupSymbols = new ArrayList<String>();
+
+      while (parser.hasMoreCommands()) {
+         parser.advance();
+         CommandType commandType = parser.commandType();
+         if (commandType == CommandType.L_COMMAND) {
+            symbolTable.addEntry(parser.symbol(), wordCount);
+            continue;
+         }
+
+         if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+         }
+
+         if (commandType == CommandType.C_COMMAND) {
+            words[wordCount] = Code.encodeC(parser.command()) & 0xFFFF;
+         } else {
+            String symbol = parser.symbol();
+            if (Character.isDigit(symbol.charAt(0))) {
+               // symbols cannot start with a digit so this is a constant
+               words[wordCount] = Integer.parseInt(symbol);
+            } else if (symbolTable.contains(symbol)) {
+               // predefined symbol or a label that was already declared
+               words[wordCount] = symbolTable.getAddress(symbol);
+            } else {
+               if (fixupSymbols.size() == fixupAddresses.length) {
+                  fixupAddresses = Arrays.copyOf(fixupAddresses, fixupAddresses.length * 2);
+               }
+               fixupAddresses[fixupSymbols.size()] = wordCount;
+               fixupSymbols.add(symbol);
+            }
          }
+         wordCount++;
       }
+
+      // every label is known now, so any fixup whose symbol is still missing
+      // is a variable. Fixups are in program order, which allocates variables
+      // in the same order as the two pass assembler
+      int currentRamAddress = 16; // the next available RAM address
+      for (int i = 0; i < fixupSymbols.size(); i++) {
+         String symbol = fixupSymbols.get(i);
+         if (!symbolTable.contains(symbol)) {
+            symbolTable.addEntry(symbol, currentRamAddress);
+            currentRamAddress++;
+         }
+         words[fixupAddresses[i]] = symbolTable.getAddress(symbol);
+      }
+
+      HackWriter writer = new HackWriter(outputFile);
+      writer.writeWords(words, wordCount);
       writer.close();
    }
-}
\ No newline at end of file
+}
@@ -1,8 +1,6 @@
 package assembler;
 
 import java.io.FileNotFoundException;
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -11,33 +9,73 @@ import java.util.List;
 public class Parser {
     String[] commands;
     int commandIndex;
+    String currentCommand;
+
+    // in streaming mode the file is read one command ahead instead of
+    // being buffered, so the parser can only make a single pass over it
+    SourceReader streamReader;
+    String nextCommand;
+
+    // reused to collect the characters of a command
+    private final StringBuilder commandBuilder = new StringBuilder();
 
     public Parser(String fileName) throws FileNotFoundException, IOException {
-        // opens the file stream and gets ready to parse it
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
-        commands = readFile(bufferedReader);
-        bufferedReader.close();
-        reset();
+        this(fileName, false);
     }
 
-    private String[] readFile(BufferedReader reader) throws IOException{
-        // reads all lines from a buffered reader to an array
-        // ignores comments, strips white space, and ignores blank lines
+    public Parser(String fileName, boolean streaming) throws FileNotFoundException, IOException {
+        // maps the file and gets ready to parse it
+        SourceReader sourceReader = new SourceReader(fileName);
+        if (streaming) {
+            streamReader = sourceReader;
+            nextCommand = readCommand(streamReader);
+        } else {
+            commands = readFile(sourceReader);
+            reset();
+        }
+    }
+
+    private String[] readFile(SourceReader reader) {
+        // reads all commands from the source to an array
         List<String> lines = new ArrayList<String>();
         String line = null;
 
-        while ((line = reader.readLine()) != null) {
-            line = line.replaceAll("\\s+","");
-            if (!line.isEmpty() && !line.startsWith("//")) {
-                lines.add(line);
-            }
+        while ((line = readCommand(reader)) != null) {
+            lines.add(line);
         }
 
         // convert array list of lines to an array
         return lines.toArray(new String[lines.size()]);
     }
 
+    private String readCommand(SourceReader reader) {
+        // reads lines until the next command, or returns null at the end of the file
+        // ignores comments, strips white space, and ignores blank lines.
+        // Only lines holding a command are turned into a String
+        while (reader.hasMoreLines()) {
+            CharSequence line = reader.nextLine();
+            commandBuilder.setLength(0);
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (c == '/' && i + 1 < line.length() && line.charAt(i + 1) == '/') {
+                    // the rest of the line is a comment
+                    break;
+                }
+                if (!Character.isWhitespace(c)) {
+                    commandBuilder.append(c);
+                }
+            }
+            if (commandBuilder.length() > 0) {
+                return commandBuilder.toString();
+            }
+        }
+        return null;
+    }
+
     public boolean hasMoreCommands() {
+        if (streamReader != null) {
+            return nextCommand != null;
+        }
         return commandIndex < commands.length - 1;
     }
 
@@ -45,15 +83,31 @@ public class Parser {
         // reads the next command from the input and makes it the current
         // command. Should only be called if hasMoreCommands is true.
         // Initially there is no current command
+        if (streamReader != null) {
+            currentCommand = nextCommand;
+            nextCommand = readCommand(streamReader);
+            return;
+        }
         commandIndex++;
+        currentCommand = commands[commandIndex];
     }
 
     public void reset() {
+        // rewinds to before the first command. Not supported in streaming mode
+        if (streamReader != null) {
+            throw new IllegalStateException("a streaming parser cannot be reset");
+        }
         commandIndex = -1;
+        currentCommand = null;
     }
 
     private String currentCommand() {
-        return commands[commandIndex];
+        return currentCommand;
+    }
+
+    public String command() {
+        // returns the current command with white space and comments removed
+        return currentCommand;
     }
 
     public CommandType commandType() {
@@ -0,0 +1,109 @@
+package assembler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+public class SourceReader {
+    // Memory maps a source file and hands out its lines as CharSequence
+    // views over the mapped bytes, so scanning a file does not allocate a
+    // String per line. Sources are expected to be ASCII: each byte is one char
+    private final ByteBuffer source;
+    private int position = 0;
+
+    public SourceReader(String fileName) throws IOException {
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public boolean hasMoreLines() {
+        return position < source.limit();
+    }
+
+    public Slice nextLine() {
+        // returns the next line without its line terminator (\n or \r\n)
+        // should only be called if hasMoreLines is true
+        int start = position;
+        int end = start;
+        while (end < source.limit() && source.get(end) != '\n') {
+            end++;
+        }
+        position = end + 1;
+        if (end > start && source.get(end - 1) == '\r') {
+            end--;
+        }
+        return new Slice(source, start, end);
+    }
+
+    public static class Slice implements CharSequence {
+        // a view of the bytes [start, end) of a source file
+        private final ByteBuffer source;
+        private final int start;
+        private final int end;
+
+        private Slice(ByteBuffer source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (source.get(start + index) & 0xFF);
+        }
+
+        @Override
+        public Slice subSequence(int from, int to) {
+            return new Slice(source, start + from, start + to);
+        }
+
+        public Slice trim() {
+            // returns the view without leading and trailing white space
+            int from = start;
+            int to = end;
+            while (from < to && (source.get(from) & 0xFF) <= ' ') {
+                from++;
+            }
+            while (to > from && (source.get(to - 1) & 0xFF) <= ' ') {
+                to--;
+            }
+            return new Slice(source, from, to);
+        }
+
+        public boolean startsWith(String prefix) {
+            return length() >= prefix.length() && regionMatches(0, prefix);
+        }
+
+        public boolean endsWith(String suffix) {
+            return length() >= suffix.length() && regionMatches(length() - suffix.length(), suffix);
+        }
+
+        private boolean regionMatches(int offset, String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (charAt(offset + i) != text.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length()];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
+    }
+}
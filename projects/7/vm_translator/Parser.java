@@ -1,8 +1,6 @@
 package vm_translator;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -13,21 +11,20 @@ public class Parser {
     int commandIndex = -1;
 
     public Parser(String fileName) throws FileNotFoundException, IOException {
-        // opens the file stream and gets ready to parse it
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
-        commands = readFile(bufferedReader);
-        bufferedReader.close();
+        // maps the file and gets ready to parse it
+        commands = readFile(new SourceReader(fileName));
     }
 
-    private String[] readFile(BufferedReader reader) throws IOException{
-        // reads all lines from a buffered reader to an array
-        // ignores comments, strips white space, and ignores blank lines
+    private String[] readFile(SourceReader reader) {
+        // reads all lines from the source to an array
+        // ignores comments, strips white space, and ignores blank lines.
+        // Lines are only turned into Strings once they are known to be commands
         List<String> lines = new ArrayList<String>();
-        String line = null;
 
-        while ((line = reader.readLine()) != null) {
+        while (reader.hasMoreLines()) {
+            SourceReader.Slice line = reader.nextLine();
             if (!line.isEmpty() && !line.startsWith("//")) {
-                lines.add(line);
+                lines.add(line.toString());
             }
         }
 
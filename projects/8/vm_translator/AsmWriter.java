@@ -0,0 +1,182 @@
+package vm_translator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class AsmWriter {
+    // Collects emitted assembly in a StringBuilder that is reused for the
+    // whole translation and hands it to the underlying writer in large
+    // blocks, instead of making a write call per instruction
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+    // how many recent instructions the peephole optimizer can rewrite
+    private static final int WINDOW_SIZE = 16;
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+    private char[] block = new char[0];
+    private long bytesWritten = 0;
+
+    // with an optimizer, instructions wait in the window until they are
+    // pushed out by newer ones or a label, and only then reach the buffer
+    private final PeepholeOptimizer optimizer;
+    private final List<String> window = new ArrayList<String>();
+    private long instructionsEmitted = 0;
+    private long instructionsWritten = 0;
+
+    public AsmWriter(Writer out) {
+        // buffers output for the given writer
+        this(out, null);
+    }
+
+    public AsmWriter() {
+        // keeps all output in memory, see contents()
+        this(null, null);
+    }
+
+    public AsmWriter(Writer out, PeepholeOptimizer optimizer) {
+        // buffers output for the given writer, or keeps it in memory when
+        // out is null. Instructions go through the optimizer if there is one
+        this.out = out;
+        this.optimizer = optimizer;
+    }
+
+    static AsmWriter ofContents(String contents, long instructionsEmitted, long instructionsWritten) {
+        // an in-memory writer holding assembly produced earlier, such as
+        // a fragment loaded from the translation cache
+        AsmWriter writer = new AsmWriter();
+        writer.buffer.append(contents);
+        writer.bytesWritten = contents.length();
+        writer.instructionsEmitted = instructionsEmitted;
+        writer.instructionsWritten = instructionsWritten;
+        return writer;
+    }
+
+    public void write(CharSequence instruction) throws IOException {
+        // writes a single instruction, including its line ending
+        instructionsEmitted++;
+        if (optimizer == null) {
+            appendInstruction(instruction);
+        } else {
+            emit(instruction.subSequence(0, instruction.length() - 1).toString());
+        }
+    }
+
+    public void writeAddress(String symbol) throws IOException {
+        // writes an A instruction loading the given symbol
+        instructionsEmitted++;
+        if (optimizer == null) {
+            buffer.append('@').append(symbol).append('\n');
+            bytesWritten += symbol.length() + 2;
+            instructionsWritten++;
+            flushIfFull();
+        } else {
+            emit("@" + symbol);
+        }
+    }
+
+    public void writeAddress(int value) throws IOException {
+        // writes an A instruction loading the given constant
+        instructionsEmitted++;
+        if (optimizer == null) {
+            int start = buffer.length();
+            buffer.append('@').append(value).append('\n');
+            bytesWritten += buffer.length() - start;
+            instructionsWritten++;
+            flushIfFull();
+        } else {
+            emit("@" + value);
+        }
+    }
+
+    public void writeLabel(String label) throws IOException {
+        // writes a label declaration. Code can jump here, so no instruction
+        // before the label may be combined with one after it
+        commitWindow();
+        buffer.append('(').append(label).append(")\n");
+        bytesWritten += label.length() + 3;
+        flushIfFull();
+    }
+
+    public void writeFragment(AsmWriter fragment) throws IOException {
+        // appends everything written to another, in-memory writer
+        commitWindow();
+        fragment.commitWindow();
+        buffer.append(fragment.buffer);
+        bytesWritten += fragment.bytesWritten;
+        instructionsEmitted += fragment.instructionsEmitted;
+        instructionsWritten += fragment.instructionsWritten;
+        flushIfFull();
+    }
+
+    public long bytesWritten() {
+        // number of bytes emitted so far (assembly is ASCII)
+        return bytesWritten;
+    }
+
+    public long instructionsEmitted() {
+        // number of instructions written to this writer
+        return instructionsEmitted;
+    }
+
+    public long instructionsWritten() {
+        // number of instructions left after peephole optimization
+        return instructionsWritten + window.size();
+    }
+
+    public String contents() throws IOException {
+        // returns everything written to an in-memory writer
+        commitWindow();
+        return buffer.toString();
+    }
+
+    public void flush() throws IOException {
+        if (out != null) {
+            int length = buffer.length();
+            if (block.length < length) {
+                block = new char[length];
+            }
+            buffer.getChars(0, length, block, 0);
+            out.write(block, 0, length);
+            buffer.setLength(0);
+        }
+    }
+
+    public void close() throws IOException {
+        commitWindow();
+        flush();
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    private void emit(String instruction) throws IOException {
+        window.add(instruction);
+        optimizer.rewrite(window);
+        if (window.size() > WINDOW_SIZE) {
+            appendInstruction(window.remove(0) + "\n");
+        }
+    }
+
+    private void commitWindow() throws IOException {
+        for (String instruction : window) {
+            appendInstruction(instruction + "\n");
+        }
+        window.clear();
+    }
+
+    private void appendInstruction(CharSequence instruction) throws IOException {
+        buffer.append(instruction);
+        bytesWritten += instruction.length();
+        instructionsWritten++;
+        flushIfFull();
+    }
+
+    private void flushIfFull() throws IOException {
+        if (out != null && buffer.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package vm_translator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+
+public class BinaryParser implements CommandSource {
+    // Reads the binary encoding written by BinaryWriter. The file is memory
+    // mapped and each command is decoded from the mapping when advance
+    // reaches it, only the symbol table is turned into Strings up front.
+    //
+    // The format is the magic bytes "VMB" and a version byte, the SHA-256
+    // of the .vm source the file was written from, a varint symbol count
+    // followed by each symbol as a varint length and its ASCII bytes, a
+    // varint command count and then the commands. A command is its opcode
+    // byte followed by the operands of that opcode:
+    //   arithmetic and return   no operands
+    //   push and pop            Segment ordinal byte, varint index
+    //   label, goto and if-goto varint symbol
+    //   function and call       varint symbol, varint count
+    static final byte[] MAGIC = {'V', 'M', 'B', 2};
+    static final int HASH_LENGTH = 32;
+
+    // opcodes 0 - 8 are the arithmetic commands in this order
+    static final String[] ARITHMETIC = {"add", "sub", "neg", "eq", "gt", "lt", "and", "or", "not"};
+    static final int OP_PUSH = 9;
+    static final int OP_POP = 10;
+    static final int OP_LABEL = 11;
+    static final int OP_GOTO = 12;
+    static final int OP_IF = 13;
+    static final int OP_FUNCTION = 14;
+    static final int OP_RETURN = 15;
+    static final int OP_CALL = 16;
+
+    private static final CommandType[] COMMAND_TYPES = {
+        CommandType.C_PUSH, CommandType.C_POP, CommandType.C_LABEL, CommandType.C_GOTO,
+        CommandType.C_IF, CommandType.C_FUNCTION, CommandType.C_RETURN, CommandType.C_CALL
+    };
+    private static final String[] COMMANDS = {"push", "pop", "label", "goto", "if-goto", "function", "return", "call"};
+
+    private final String fileName;
+    private final ByteBuffer source;
+    private final String[] symbols;
+    private int commandsLeft;
+
+    // the current command
+    private int opcode = -1;
+    private String arg1 = null;
+    private Segment segment = null;
+    private int arg2 = 0;
+
+    public BinaryParser(String fileName) throws IOException {
+        this.fileName = fileName;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            source = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        for (byte b : MAGIC) {
+            if (!source.hasRemaining() || source.get() != b) {
+                throw new IOException(fileName + " is not a VM binary file");
+            }
+        }
+        for (int i = 0; i < HASH_LENGTH; i++) {
+            readByte();
+        }
+        symbols = new String[readVarint()];
+        for (int i = 0; i < symbols.length; i++) {
+            char[] chars = new char[readVarint()];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = (char) (readByte() & 0xFF);
+            }
+            symbols[i] = new String(chars);
+        }
+        commandsLeft = readVarint();
+    }
+
+    static String binaryFileName(String fileName) {
+        // the .vmb file for a .vm file
+        return fileName.substring(0, fileName.length() - ".vm".length()) + ".vmb";
+    }
+
+    static byte[] sourceHash(String fileName) throws IOException {
+        // the SHA-256 of a .vm file, as stored in the binary written from it
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(Paths.get(fileName)));
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static boolean isBinaryOf(String binaryFile, String sourceFile) throws IOException {
+        // true if the binary is in the current format and was written from
+        // the source as it is now. Modification times are not used, they
+        // are too coarse on some file systems and copies may keep them
+        byte[] header = new byte[MAGIC.length + HASH_LENGTH];
+        try (FileChannel channel = FileChannel.open(Paths.get(binaryFile), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // too short to be a binary in the current format
+                    return false;
+                }
+            }
+        }
+        return Arrays.equals(header, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+            && Arrays.equals(header, MAGIC.length, header.length, sourceHash(sourceFile), 0, HASH_LENGTH);
+    }
+
+    public boolean hasMoreCommands() {
+        return commandsLeft > 0;
+    }
+
+    public void advance() throws IOException {
+        // decodes the next command and makes it the current command
+        commandsLeft--;
+        opcode = readByte() & 0xFF;
+        arg1 = null;
+        segment = null;
+        arg2 = 0;
+        switch (opcode) {
+            case OP_PUSH:
+            case OP_POP:
+                int code = readByte() & 0xFF;
+                segment = Segment.of(code);
+                if (segment == null) {
+                    throw new IOException(String.format("%s: bad segment %d", fileName, code));
+                }
+                arg1 = segment.keyword;
+                arg2 = readVarint();
+                break;
+            case OP_LABEL:
+            case OP_GOTO:
+            case OP_IF:
+                arg1 = readSymbol();
+                break;
+            case OP_FUNCTION:
+            case OP_CALL:
+                arg1 = readSymbol();
+                arg2 = readVarint();
+                break;
+            case OP_RETURN:
+                break;
+            default:
+                if (opcode >= ARITHMETIC.length) {
+                    throw new IOException(String.format("%s: bad opcode %d", fileName, opcode));
+                }
+        }
+    }
+
+    public CommandType commandType() {
+        return opcode < ARITHMETIC.length ? CommandType.C_ARITHMETIC : COMMAND_TYPES[opcode - OP_PUSH];
+    }
+
+    public String command() {
+        return opcode < ARITHMETIC.length ? ARITHMETIC[opcode] : COMMANDS[opcode - OP_PUSH];
+    }
+
+    public Segment segment() {
+        return segment;
+    }
+
+    public String arg1() {
+        return arg1;
+    }
+
+    public int arg2() {
+        return arg2;
+    }
+
+    private String readSymbol() throws IOException {
+        int symbol = readVarint();
+        if (symbol >= symbols.length) {
+            throw new IOException(String.format("%s: bad symbol %d", fileName, symbol));
+        }
+        return symbols[symbol];
+    }
+
+    private int readVarint() throws IOException {
+        // 7 bits at a time, least significant first, high bit set on all
+        // but the last byte
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = readByte();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException(fileName + ": varint is too long");
+    }
+
+    private byte readByte() throws IOException {
+        if (!source.hasRemaining()) {
+            throw new IOException(fileName + " ends in the middle of a command");
+        }
+        return source.get();
+    }
+}
@@ -0,0 +1,121 @@
+package vm_translator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class BinaryWriter {
+    // Encodes the commands of a VM file in the binary format described in
+    // BinaryParser. Every label and function name is stored once in the
+    // symbol table and commands refer to it by index
+    private final byte[] sourceHash;
+    private final Map<String, Integer> symbols = new LinkedHashMap<String, Integer>();
+    private final ByteArrayOutputStream commands = new ByteArrayOutputStream();
+    private int commandCount = 0;
+
+    public BinaryWriter(byte[] sourceHash) {
+        // sourceHash is the SHA-256 of the .vm file being encoded, see
+        // BinaryParser.sourceHash
+        this.sourceHash = sourceHash;
+    }
+
+    public static void convert(String fileName, String outputFile) throws IOException {
+        // writes the binary encoding of a .vm file
+        CommandSource source = new Parser(fileName);
+        BinaryWriter writer = new BinaryWriter(BinaryParser.sourceHash(fileName));
+        while (source.hasMoreCommands()) {
+            source.advance();
+            writer.writeCommand(source);
+        }
+        try (OutputStream out = new FileOutputStream(outputFile)) {
+            writer.writeTo(out);
+        }
+    }
+
+    public void writeCommand(CommandSource source) {
+        // encodes the current command of source
+        CommandType commandType = source.commandType();
+        if (commandType == null) {
+            throw new IllegalArgumentException("unknown command " + source.command());
+        }
+        commandCount++;
+        switch (commandType) {
+            case C_ARITHMETIC:
+                commands.write(arithmeticOpcode(source.command()));
+                break;
+            case C_PUSH:
+            case C_POP:
+                commands.write(commandType == CommandType.C_PUSH ? BinaryParser.OP_PUSH : BinaryParser.OP_POP);
+                commands.write(source.segment().ordinal());
+                writeVarint(commands, source.arg2());
+                break;
+            case C_LABEL:
+            case C_GOTO:
+            case C_IF:
+                commands.write(
+                    commandType == CommandType.C_LABEL ? BinaryParser.OP_LABEL
+                        : commandType == CommandType.C_GOTO ? BinaryParser.OP_GOTO
+                        : BinaryParser.OP_IF
+                );
+                writeVarint(commands, symbol(source.arg1()));
+                break;
+            case C_FUNCTION:
+            case C_CALL:
+                commands.write(commandType == CommandType.C_FUNCTION ? BinaryParser.OP_FUNCTION : BinaryParser.OP_CALL);
+                writeVarint(commands, symbol(source.arg1()));
+                writeVarint(commands, source.arg2());
+                break;
+            case C_RETURN:
+                commands.write(BinaryParser.OP_RETURN);
+                break;
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        // writes the header, the symbol table and the commands
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(BinaryParser.MAGIC);
+        header.write(sourceHash);
+        writeVarint(header, symbols.size());
+        for (String symbol : symbols.keySet()) {
+            writeVarint(header, symbol.length());
+            for (int i = 0; i < symbol.length(); i++) {
+                header.write(symbol.charAt(i));
+            }
+        }
+        writeVarint(header, commandCount);
+        header.writeTo(out);
+        commands.writeTo(out);
+    }
+
+    private int symbol(String name) {
+        // the index of a symbol, adding it to the table when it is new
+        Integer index = symbols.get(name);
+        if (index == null) {
+            index = symbols.size();
+            symbols.put(name, index);
+        }
+        return index;
+    }
+
+    private static int arithmeticOpcode(String command) {
+        for (int i = 0; i < BinaryParser.ARITHMETIC.length; i++) {
+            if (BinaryParser.ARITHMETIC[i].equals(command)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("unknown command " + command);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -2,30 +2,107 @@ package vm_translator;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.Set;
 
 
 public class CodeWriter {
-    private FileWriter writer;
-    private String vmFileName;
-    // used for generating unique labels
+    private AsmWriter writer;
+    private final Set<Optimization> optimizations;
+    // the bootstrap code is not part of any VM file
+    private String vmFileName = "$bootstrap";
+    // used for generating unique labels. Counters restart for every VM file
+    // and the generated labels include the file name, so the translation of
+    // one file does not depend on the files translated before it
     private int lCommandCounter = 1; 
     private int returnAddressCounter = 1;
 
+    // offsets up to this are reached with A=M+1 and A=A+1 instead of
+    // adding the index through D, which leaves D free for the value
+    private static final int MAX_CHAINED_INDEX = 3;
+
+    // with FUSED_COMPARE_BRANCH a comparison is held back until the next
+    // command shows whether it feeds straight into an if-goto. A "not"
+    // in between is folded into the comparison by inverting it
+    private String pendingComparison = null;
+    private boolean pendingNegated = false;
+
+    // with CACHE_TOP the value on top of the VM stack may be kept in D
+    // instead of RAM. It is spilled wherever control flow can enter or
+    // leave, so at every label, jump, call and return the whole stack
+    // is in RAM again
+    private final boolean cacheTop;
+    private boolean topInD = false;
+
     public CodeWriter(String outputFile) throws IOException {
+        this(outputFile, EnumSet.noneOf(Optimization.class));
+    }
+
+    public CodeWriter(String outputFile, Set<Optimization> optimizations) throws IOException {
         // opens the outpit file and gets ready to write to it
-        writer = new FileWriter(outputFile);
+        this(newAsmWriter(new FileWriter(outputFile), optimizations), optimizations);
         writeInit();
     }
 
+    public CodeWriter(AsmWriter writer, Set<Optimization> optimizations) {
+        // writes to the given writer without the bootstrap code. Used to
+        // translate a single VM file into a buffer that is merged later.
+        // Shared routines are emitted by the bootstrap, so the writer for
+        // the output file must be created with the same optimizations
+        this.writer = writer;
+        this.optimizations = optimizations;
+        this.cacheTop = optimizations.contains(Optimization.CACHE_TOP);
+    }
+
+    public static AsmWriter newAsmWriter(Writer out, Set<Optimization> optimizations) {
+        // creates the writer for the given output (or an in-memory one when
+        // out is null) that applies the requested output optimizations
+        PeepholeOptimizer optimizer = null;
+        if (optimizations.contains(Optimization.PEEPHOLE)) {
+            optimizer = new PeepholeOptimizer();
+        }
+        return new AsmWriter(out, optimizer);
+    }
+
     public void close() throws IOException {
         // closes the output file
+        finishFile();
         writer.close();
     }
 
+    public void finishFile() throws IOException {
+        // writes out any code held back for the current VM file
+        endBasicBlock();
+    }
+
+    public long bytesWritten() {
+        // number of bytes of assembly emitted so far
+        return writer.bytesWritten();
+    }
+
+    public long instructionsEmitted() {
+        // number of instructions generated, before peephole optimization
+        return writer.instructionsEmitted();
+    }
+
+    public long instructionsWritten() {
+        // number of instructions in the output
+        return writer.instructionsWritten();
+    }
+
     public void setFileName(String fileName) {
         // informs the code writer that the translation of a 
         // new VM file is started
         vmFileName = fileName;
+        lCommandCounter = 1;
+        returnAddressCounter = 1;
+    }
+
+    public void writeTranslation(AsmWriter translation) throws IOException {
+        // appends the translation of a VM file produced by another CodeWriter
+        endBasicBlock();
+        writer.writeFragment(translation);
     }
 
     public void writeInit() throws IOException {
@@ -40,40 +117,149 @@ public class CodeWriter {
 
         // call Sys.init
         writeCall("Sys.init", 0);
+
+        // Sys.init never returns, so the shared routines can follow it
+        if (optimizations.contains(Optimization.SHARED_CALL_RETURN)) {
+            writeSharedCall();
+            writeSharedReturn();
+        }
+        if (optimizations.contains(Optimization.SHARED_COMPARE)) {
+            writeSharedComparison("eq");
+            writeSharedComparison("gt");
+            writeSharedComparison("lt");
+        }
     }
 
     public void writeLabel(String label) throws IOException {
-        writer.write(String.format("(%s)\n", label));
+        endBasicBlock();
+        writer.writeLabel(label);
     }
 
     public void writeGoto(String label) throws IOException {
-        writer.write(String.format("@%s\n", label));
+        endBasicBlock();
+        writer.writeAddress(label);
         writer.write("0;JMP\n");
     }
 
     public void writeIf(String label) throws IOException {
         // pop top of stack. if it is NOT 0 got to label
         // else continue with next instruction
+        if (pendingComparison != null) {
+            // jump on the comparison itself instead of pushing -1 or 0
+            String comparison = pendingComparison;
+            boolean negated = pendingNegated;
+            pendingComparison = null;
+            loadTopIntoD();
+            writer.write("@SP\n");
+            writer.write("AM=M-1\n");
+            writer.write("D=M-D\n");
+            writer.writeAddress(label);
+            writer.write("D;" + comparisonJump(comparison, negated) + "\n");
+            topInD = false;
+            return;
+        }
+        if (cacheTop) {
+            loadTopIntoD();
+            writer.writeAddress(label);
+            writer.write("D;JNE\n");
+            topInD = false;
+            return;
+        }
         decrementStackPointer();
         loadTopOfStackIntoD();
-        writer.write(String.format("@%s\n", label));
+        writer.writeAddress(label);
         writer.write("D;JNE\n");
     }
 
     public void writeCall(String functionName, int numArgs) throws IOException {
         // call needs to save the state of the current function on the stack
         // and push the arguments necessary for the function being called
+        endBasicBlock();
 
         // create a unique label for this function's return address
-        String returnAddressLabel = String.format(
-            "%s-return-%d", functionName, returnAddressCounter
-        );
+        String returnAddressLabel =
+            functionName + "-return-" + vmFileName + "." + returnAddressCounter;
+
+        if (optimizations.contains(Optimization.SHARED_CALL_RETURN)) {
+            // R13 = f, R14 = n, D = return-address, then let $$CALL do the rest
+            writer.writeAddress(functionName);
+            writer.write("D=A\n");
+            writer.write("@13\n");
+            writer.write("M=D\n");
+            writer.writeAddress(numArgs);
+            writer.write("D=A\n");
+            writer.write("@14\n");
+            writer.write("M=D\n");
+            writer.writeAddress(returnAddressLabel);
+            writer.write("D=A\n");
+            writeGoto("$$CALL");
+        } else {
+            // push return-address
+            writer.writeAddress(returnAddressLabel);
+            writer.write("D=A\n");
+            pushD();
+
+            pushCallerFrame();
+
+            // ARG = SP-n-5 
+            writer.writeAddress(numArgs+5);
+            writer.write("D=A\n");
+            writer.write("@SP\n");
+            writer.write("D=M-D\n");
+            writer.write("@ARG\n");
+            writer.write("M=D\n");
+
+            // LCL = SP
+            writer.write("@SP\n");
+            writer.write("D=M\n");
+            writer.write("@LCL\n");
+            writer.write("M=D\n"); 
+
+            // goto f
+            writeGoto(functionName);
+        }
+
+        // write label for the return address
+        writeLabel(returnAddressLabel);
+
+        returnAddressCounter++;
+    }
+
+    private void writeSharedCall() throws IOException {
+        // the body of every call, entered with the function address in R13,
+        // the number of arguments in R14 and the return address in D
+        writeLabel("$$CALL");
 
         // push return-address
-        writer.write(String.format("@%s\n", returnAddressLabel));
-        writer.write("D=A\n");
         pushD();
 
+        pushCallerFrame();
+
+        // ARG = SP-n-5
+        writer.write("@14\n");
+        writer.write("D=M\n");
+        writer.write("@5\n");
+        writer.write("D=D+A\n");
+        writer.write("@SP\n");
+        writer.write("D=M-D\n");
+        writer.write("@ARG\n");
+        writer.write("M=D\n");
+
+        // LCL = SP
+        writer.write("@SP\n");
+        writer.write("D=M\n");
+        writer.write("@LCL\n");
+        writer.write("M=D\n");
+
+        // goto f
+        writer.write("@13\n");
+        writer.write("A=M\n");
+        writer.write("0;JMP\n");
+    }
+
+    private void pushCallerFrame() throws IOException {
+        // saves the segment pointers of the calling function
+
         // push LCL
         writer.write("@LCL\n");
         writer.write("D=M\n");
@@ -93,34 +279,26 @@ public class CodeWriter {
         writer.write("@THAT\n");
         writer.write("D=M\n");
         pushD();
-
-        // ARG = SP-n-5 
-        writer.write(String.format("@%d\n", numArgs+5));
-        writer.write("D=A\n");
-        writer.write("@SP\n");
-        writer.write("D=M-D\n");
-        writer.write("@ARG\n");
-        writer.write("M=D\n");
-
-        // LCL = SP
-        writer.write("@SP\n");
-        writer.write("D=M\n");
-        writer.write("@LCL\n");
-        writer.write("M=D\n"); 
-
-        // goto f
-        writeGoto(functionName);
-
-        // write label for the return address
-        writeLabel(returnAddressLabel);
-
-        returnAddressCounter++;
     }
 
     public void writeReturn() throws IOException {
         // return needs to restore the saved state of the calling function
         // and jump back to the return address
+        endBasicBlock();
+        if (optimizations.contains(Optimization.SHARED_CALL_RETURN)) {
+            writeGoto("$$RETURN");
+        } else {
+            writeReturnBody();
+        }
+    }
+
+    private void writeSharedReturn() throws IOException {
+        // the body of every return
+        writeLabel("$$RETURN");
+        writeReturnBody();
+    }
 
+    private void writeReturnBody() throws IOException {
         // R13 - R15 are general purpose registers for the VM implementation
         // using R14 for FRAME and R15 for RET
 
@@ -141,7 +319,7 @@ public class CodeWriter {
         writer.write("M=D\n"); // put val at FRAME-5 into R15
 
         // *ARG = pop()
-        writePushPop(CommandType.C_POP, "argument", 0);
+        writePushPop(CommandType.C_POP, Segment.ARGUMENT, 0);
 
         // SP = ARG + 1
         writer.write("@ARG\n");
@@ -196,17 +374,132 @@ public class CodeWriter {
     }
 
     public void writeFunction(String functionName, int numLocals) throws IOException {
+        endBasicBlock();
         // declare a label for the function entry
         writeLabel(functionName);
         // push 0 onto the stack numLocals times
         for (int i = 0; i < numLocals; i++) {
-            writePushPop(CommandType.C_PUSH, "constant", 0);
+            writePushPop(CommandType.C_PUSH, Segment.CONSTANT, 0);
         }
     }
     
     public void writeArithmetic(String command) throws IOException {
         // writes the assembly code that is the translation of
         // the given arithmetic command
+        boolean comparison = command.equals("eq") || command.equals("gt") || command.equals("lt");
+        if (pendingComparison != null && command.equals("not")) {
+            pendingNegated = !pendingNegated;
+            return;
+        }
+        flushPendingComparison();
+        if (comparison && optimizations.contains(Optimization.FUSED_COMPARE_BRANCH)) {
+            pendingComparison = command;
+            pendingNegated = false;
+        } else if (comparison && optimizations.contains(Optimization.SHARED_COMPARE)) {
+            writeSharedComparisonCall(command);
+        } else if (cacheTop) {
+            writeCachedArithmetic(command);
+        } else {
+            writeArithmeticCode(command);
+        }
+    }
+
+    private void writeCachedArithmetic(String command) throws IOException {
+        // computes the command with the result left in D. The top value is
+        // loaded into D if it is not there already and the value below it
+        // is popped straight into the ALU
+        loadTopIntoD();
+        if (command.equals("neg")) {
+            writer.write("D=-D\n");
+        } else if (command.equals("not")) {
+            writer.write("D=!D\n");
+        } else {
+            writer.write("@SP\n");
+            writer.write("AM=M-1\n");
+            if (command.equals("add")) {
+                writer.write("D=D+M\n");
+            } else if (command.equals("and")) {
+                writer.write("D=D&M\n");
+            } else if (command.equals("or")) {
+                writer.write("D=D|M\n");
+            } else {
+                // sub and the comparisons need x - y
+                writer.write("D=M-D\n");
+            }
+            if (!command.equals("add") && !command.equals("sub")
+                    && !command.equals("and") && !command.equals("or")) {
+                // turn x - y into true (-1) or false (0). These labels are
+                // only reached from here and D holds the result at both
+                String trueLabel = ifLabel();
+                String endLabel = elseLabel();
+                lCommandCounter++;
+                writer.writeAddress(trueLabel);
+                writer.write("D;" + comparisonJump(command, false) + "\n");
+                writer.write("D=0\n");
+                writer.writeAddress(endLabel);
+                writer.write("0;JMP\n");
+                writer.writeLabel(trueLabel);
+                writer.write("D=-1\n");
+                writer.writeLabel(endLabel);
+            }
+        }
+        topInD = true;
+    }
+
+    private void writeComparison(String command, boolean negated) throws IOException {
+        // writes a comparison that was held back, followed by its "not"
+        if (optimizations.contains(Optimization.SHARED_COMPARE)) {
+            writeSharedComparisonCall(command);
+        } else if (cacheTop) {
+            writeCachedArithmetic(command);
+        } else {
+            writeArithmeticCode(command);
+        }
+        if (negated && cacheTop) {
+            writeCachedArithmetic("not");
+        } else if (negated) {
+            writeArithmeticCode("not");
+        }
+    }
+
+    private void writeSharedComparisonCall(String command) throws IOException {
+        // D = return-address, then let the shared routine compare
+        spillTop();
+        String returnLabel = vmFileName + "$CMP_" + lCommandCounter;
+        writer.writeAddress(returnLabel);
+        writer.write("D=A\n");
+        writeGoto(comparisonRoutine(command));
+        writeLabel(returnLabel);
+        lCommandCounter++;
+    }
+
+    private void writeSharedComparison(String command) throws IOException {
+        // the body of every eq, gt or lt, entered with the return address
+        // in D. Replaces the top two values of the stack with -1 or 0
+
+        // R13 - R15 are general purpose registers for the VM implementation
+        // using R15 for the return address
+        String routine = comparisonRoutine(command);
+        writeLabel(routine);
+        writer.write("@15\n");
+        writer.write("M=D\n");
+        popIntoD();
+        writer.write("A=A-1\n");
+        writer.write("D=M-D\n");
+        // assume true, then overwrite with false if the jump is not taken
+        writer.write("M=-1\n");
+        writer.writeAddress(routine + "_END");
+        writer.write("D;" + comparisonJump(command, false) + "\n");
+        writer.write("@SP\n");
+        writer.write("A=M-1\n");
+        writer.write("M=0\n");
+        writeLabel(routine + "_END");
+        writer.write("@15\n");
+        writer.write("A=M\n");
+        writer.write("0;JMP\n");
+    }
+
+    private void writeArithmeticCode(String command) throws IOException {
 
         // Notes: True is -1, False, is 0. Writing "@-1" causes really weird errors
 
@@ -267,17 +560,17 @@ public class CodeWriter {
             decrementStackPointer();
             loadStackPointer();
             writer.write("D=M-D\n"); 
-            writer.write(String.format("@%s\n", "IF_" + lCommandCounter));
+            writer.writeAddress(ifLabel());
             writer.write("D;JEQ\n");
             // it is not equal so write false
             loadStackPointer();
             writer.write("M=0\n");
-            writeGoto("ELSE_" + lCommandCounter);
-            writeLabel("IF_" + lCommandCounter);
+            writeGoto(elseLabel());
+            writeLabel(ifLabel());
             // it is equal so write true
             loadStackPointer();
             writer.write("M=-1\n");
-            writeLabel("ELSE_" + lCommandCounter);
+            writeLabel(elseLabel());
             incrementStackPointer(); 
             lCommandCounter++;
         } else if (command.equals("lt")) {
@@ -288,17 +581,17 @@ public class CodeWriter {
             decrementStackPointer();
             loadStackPointer();
             writer.write("D=M-D\n"); 
-            writer.write(String.format("@%s\n", "IF_" + lCommandCounter));
+            writer.writeAddress(ifLabel());
             writer.write("D;JLT\n");
             // it is not less than so write false
             loadStackPointer();
             writer.write("M=0\n");
-            writeGoto("ELSE_" + lCommandCounter);
-            writeLabel("IF_" + lCommandCounter);
+            writeGoto(elseLabel());
+            writeLabel(ifLabel());
             // it is less than so write true
             loadStackPointer();
             writer.write("M=-1\n");
-            writeLabel("ELSE_" + lCommandCounter);
+            writeLabel(elseLabel());
             incrementStackPointer(); 
             lCommandCounter++;
         } else if (command.equals("gt")) {
@@ -309,101 +602,214 @@ public class CodeWriter {
             decrementStackPointer();
             loadStackPointer();
             writer.write("D=M-D\n"); 
-            writer.write(String.format("@%s\n", "IF_" + lCommandCounter));
+            writer.writeAddress(ifLabel());
             writer.write("D;JGT\n");
             // it is not greater than so write false
             loadStackPointer();
             writer.write("M=0\n");
-            writeGoto("ELSE_" + lCommandCounter);
-            writeLabel("IF_" + lCommandCounter);
+            writeGoto(elseLabel());
+            writeLabel(ifLabel());
             // it is greater than so write true
             loadStackPointer();
             writer.write("M=-1\n");
-            writeLabel("ELSE_" + lCommandCounter);
+            writeLabel(elseLabel());
             incrementStackPointer(); 
             lCommandCounter++;
         }
     }
 
-    public void writePushPop(CommandType command, String segment, int index) throws IOException {
+    public void writePushPop(CommandType command, Segment segment, int index) throws IOException {
         // writes the assembly code that is the translation of the 
         // given command, where command is either C_PUSH or C_POP
-
-        // load into D either the constant index 
-        // or the address of the new value 
-        if (segment.equals("constant")) {
-            // put index value into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-        } else if (segment.equals("local")) {
-            // put value at LCL + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@LCL\n");
-            writer.write("D=D+M\n");
-        } else if (segment.equals("argument")) {
-            // put value at ARG + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@ARG\n");
-            writer.write("D=D+M\n");
-        } else if (segment.equals("this")) {
-            // put value at THIS + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@THIS\n");
-            writer.write("D=D+M\n");
-        } else if (segment.equals("that")) {
-            // put value at THAT + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@THAT\n");
-            writer.write("D=D+M\n");
-        } else if (segment.equals("temp")) {
-            // put value at 5 + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@5\n");
-            writer.write("D=D+A\n");
-        } else if (segment.equals("pointer")) {
-            // put value at 3 + index into D
-            writer.write(String.format("@%d\n", index));
-            writer.write("D=A\n");
-            writer.write("@3\n");
-            writer.write("D=D+A\n");
-        } else if (segment.equals("static")) {
-            writer.write(String.format("@%s.%d\n", vmFileName, index));
-            writer.write("D=A\n");
-        } 
+        flushPendingComparison();
 
         if (command == CommandType.C_PUSH) {
-            // pushes value specified by D to top of stack
-            if (!segment.equals("constant")) {
-                // if the segment was NOT constant then D is an address
-                // not the literal value
-                writer.write("A=D\n");
-                writer.write("D=M\n"); 
+            // pushes the value specified by the segment and index
+            // when caching, the value stays in D as the new top
+            spillTop();
+            if (segment == Segment.CONSTANT) {
+                // put index value into D
+                writer.writeAddress(index);
+                writer.write("D=A\n");
+            } else {
+                loadSegmentAddress(segment, index);
+                writer.write("D=M\n");
+            }
+            if (cacheTop) {
+                topInD = true;
+            } else {
+                pushD();
             }
-            pushD();
         } else if (command == CommandType.C_POP) {
-            // pops off top of stack and puts it into location
-            // specified by D
+            // pops off top of stack and puts it into the location
+            // specified by the segment and index
+            if (topInD) {
+                storeCachedTop(segment, index);
+            } else if (fixedAddress(segment, index) != null || index <= MAX_CHAINED_INDEX) {
+                // the address can be formed without touching D,
+                // so pop straight into it
+                popIntoD();
+                loadSegmentAddress(segment, index);
+                writer.write("M=D\n");
+            } else {
+                // R13 - R15 are general purpose registers for the VM implementation
+                // using R13 for temporary variable
+                writer.writeAddress(index);
+                writer.write("D=A\n");
+                writer.writeAddress(segmentPointer(segment));
+                writer.write("D=D+M\n");
+                writer.write("@13\n");
+                writer.write("M=D\n"); // store address in R13
+                popIntoD();
+                writer.write("@13\n");
+                writer.write("A=M\n");
+                writer.write("M=D\n"); // write val in D to address pointed by R13
+            }
+        }
+    }
 
-            // R13 - R15 are general purpose registers for the VM implementation
-            // using R13 for temporary variable
+    // below are convenience methods used internally by CoderWriter
+
+    private String ifLabel() {
+        return vmFileName + "$IF_" + lCommandCounter;
+    }
 
+    private String elseLabel() {
+        return vmFileName + "$ELSE_" + lCommandCounter;
+    }
+
+    private void endBasicBlock() throws IOException {
+        // control flow may enter or leave after this point
+        flushPendingComparison();
+        spillTop();
+    }
+
+    private void spillTop() throws IOException {
+        // moves a top value cached in D back onto the stack in RAM
+        if (topInD) {
+            pushD();
+            topInD = false;
+        }
+    }
+
+    private void loadTopIntoD() throws IOException {
+        // makes sure the top value is in D and no longer on the RAM stack
+        if (!topInD) {
+            popIntoD();
+        }
+    }
+
+    private void storeCachedTop(Segment segment, int index) throws IOException {
+        // pops the top value cached in D into segment[index]
+        if (fixedAddress(segment, index) != null || index <= MAX_CHAINED_INDEX) {
+            loadSegmentAddress(segment, index);
+            writer.write("M=D\n");
+        } else {
+            // R13 - R15 are general purpose registers for the VM implementation
+            // using R13 for the value and R14 for the address
             writer.write("@13\n");
-            writer.write("M=D\n"); // store D address in R13
-            decrementStackPointer();
-            loadStackPointer();
-            writer.write("D=M\n"); // store top of stack val in D
+            writer.write("M=D\n");
+            writer.writeAddress(index);
+            writer.write("D=A\n");
+            writer.writeAddress(segmentPointer(segment));
+            writer.write("D=D+M\n");
+            writer.write("@14\n");
+            writer.write("M=D\n");
             writer.write("@13\n");
+            writer.write("D=M\n");
+            writer.write("@14\n");
             writer.write("A=M\n");
-            writer.write("M=D\n"); // write val in D to address pointed by R13
+            writer.write("M=D\n");
         }
+        topInD = false;
     }
 
-    // below are convenience methods used internally by CoderWriter
+    private void flushPendingComparison() throws IOException {
+        // writes a held back comparison that did not feed an if-goto
+        if (pendingComparison != null) {
+            String comparison = pendingComparison;
+            pendingComparison = null;
+            writeComparison(comparison, pendingNegated);
+        }
+    }
+
+    private String comparisonRoutine(String command) {
+        return "$$" + command.toUpperCase();
+    }
+
+    private String comparisonJump(String command, boolean negated) {
+        // returns the jump taken when x - y satisfies the comparison
+        switch (command) {
+            case "eq":
+                return negated ? "JNE" : "JEQ";
+            case "gt":
+                return negated ? "JLE" : "JGT";
+            default:
+                return negated ? "JGE" : "JLT";
+        }
+    }
+
+    private String fixedAddress(Segment segment, int index) {
+        // returns the symbol for segment[index] when the address is known at
+        // translation time (temp, pointer and static), otherwise null
+        switch (segment) {
+            case TEMP:
+                // temp starts at R5
+                return "R" + (5 + index);
+            case POINTER:
+                return index == 0 ? "THIS" : "THAT";
+            case STATIC:
+                return vmFileName + "." + index;
+            default:
+                return null;
+        }
+    }
+
+    private String segmentPointer(Segment segment) {
+        // returns the register holding the base address of a segment
+        switch (segment) {
+            case LOCAL:
+                return "LCL";
+            case ARGUMENT:
+                return "ARG";
+            case THIS:
+                return "THIS";
+            default:
+                return "THAT";
+        }
+    }
+
+    private void loadSegmentAddress(Segment segment, int index) throws IOException {
+        // points A at segment[index]. D is only used for indexes above
+        // MAX_CHAINED_INDEX of local, argument, this and that
+        String fixedAddress = fixedAddress(segment, index);
+        if (fixedAddress != null) {
+            writer.writeAddress(fixedAddress);
+        } else if (index <= MAX_CHAINED_INDEX) {
+            // small offsets are added one at a time
+            writer.writeAddress(segmentPointer(segment));
+            if (index == 0) {
+                writer.write("A=M\n");
+            } else {
+                writer.write("A=M+1\n");
+                for (int i = 1; i < index; i++) {
+                    writer.write("A=A+1\n");
+                }
+            }
+        } else {
+            writer.writeAddress(index);
+            writer.write("D=A\n");
+            writer.writeAddress(segmentPointer(segment));
+            writer.write("A=D+M\n");
+        }
+    }
+
+    private void popIntoD() throws IOException {
+        // pops the top of the stack into D
+        writer.write("@SP\n");
+        writer.write("AM=M-1\n");
+        writer.write("D=M\n");
+    }
 
     private void incrementStackPointer() throws IOException {
         writer.write("@SP\n");
@@ -0,0 +1,8 @@
+package vm_translator;
+
+
+record Command(CommandType type, String command, Segment segment, String arg1, int arg2) {
+    // a VM command as parsed from one line. segment is only set for push
+    // and pop, arg1 is null for arithmetic commands and return, and arg2
+    // is 0 for commands without a numeric argument
+}
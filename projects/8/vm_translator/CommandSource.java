@@ -0,0 +1,57 @@
+package vm_translator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+interface CommandSource {
+    // The commands of one VM file, read either from .vm text by the Parser
+    // or from the binary .vmb encoding by BinaryParser
+
+    boolean hasMoreCommands();
+
+    void advance() throws IOException;
+
+    CommandType commandType();
+
+    String command();
+
+    String arg1();
+
+    // the segment of a push or pop, null for other commands
+    Segment segment();
+
+    int arg2();
+
+    static CommandSource open(String fileName) throws IOException {
+        // opens a .vm or .vmb file. For a .vm file a .vmb next to it that
+        // was written from the same source is read instead, which skips
+        // parsing the text
+        if (fileName.endsWith(".vmb")) {
+            return new BinaryParser(fileName);
+        }
+        File binary = new File(BinaryParser.binaryFileName(fileName));
+        if (binary.isFile() && BinaryParser.isBinaryOf(binary.getPath(), fileName)) {
+            return new BinaryParser(binary.getPath());
+        }
+        return new Parser(fileName);
+    }
+
+    static List<String> listDirectory(String directory) {
+        // the VM files in a directory in file name order: every .vm file,
+        // and the .vmb files that have no .vm source next to them
+        File[] fileList = new File(directory).listFiles(
+            (dir, name) -> name.endsWith(".vm")
+                || (name.endsWith(".vmb") && !new File(dir, name.substring(0, name.length() - 1)).exists())
+        );
+        Arrays.sort(fileList);
+        List<String> fileNames = new ArrayList<String>();
+        for (File file : fileList) {
+            fileNames.add(directory + "/" + file.getName());
+        }
+        return fileNames;
+    }
+}
@@ -1,13 +1,57 @@
 package vm_translator;
 
-import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class Main {
     public static void main(String args[]) throws IOException, FileNotFoundException {
         String input = args[0];
+
+        // optional flags after the input select code generation optimizations
+        // --shared-call: calls and returns jump to one shared routine each
+        // --peephole: rewrite redundant instruction sequences
+        // --shared-compare: eq, gt and lt call one shared routine each
+        // --fuse-branches: a comparison followed by if-goto jumps directly
+        // --cache-top: keep the top of the stack in D between commands
+        // --interpret runs the program instead of translating it, see interpret
+        // --write-binary saves each .vm file as .vmb, which later runs read
+        // instead of parsing the text
+        // --cache keeps the translation of each file of a directory and
+        // only translates the files that changed since the last run
+        Set<Optimization> optimizations = EnumSet.noneOf(Optimization.class);
+        boolean cache = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--write-binary")) {
+                writeBinaries(input);
+            } else if (args[i].equals("--cache")) {
+                cache = true;
+            }
+        }
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--interpret")) {
+                interpret(input, args);
+                return;
+            } else if (args[i].equals("--shared-call")) {
+                optimizations.add(Optimization.SHARED_CALL_RETURN);
+            } else if (args[i].equals("--peephole")) {
+                optimizations.add(Optimization.PEEPHOLE);
+            } else if (args[i].equals("--shared-compare")) {
+                optimizations.add(Optimization.SHARED_COMPARE);
+            } else if (args[i].equals("--fuse-branches")) {
+                optimizations.add(Optimization.FUSED_COMPARE_BRANCH);
+            } else if (args[i].equals("--cache-top")) {
+                optimizations.add(Optimization.CACHE_TOP);
+            }
+        }
         
         String outputFile;
         boolean directoryInput = false;
@@ -21,16 +65,37 @@ public class Main {
             directoryInput = true;
         }
 
-        CodeWriter codeWriter = new CodeWriter(outputFile);
+        CodeWriter codeWriter = new CodeWriter(outputFile, optimizations);
 
         if (directoryInput) {
-            // call handleFile on each .vm file in the directory
-            File[] fileList = new File(input).listFiles();
-            for (File file : fileList) {
-                String fileName = file.getName();
-                if (fileName.endsWith(".vm")) {
-                    handleFile(input + "/" + fileName, codeWriter);
+            // each .vm file in the directory is translated on its own worker
+            // into a private buffer. The buffers are then appended in file
+            // name order, so the output does not depend on scheduling
+            List<String> fileList = CommandSource.listDirectory(input);
+            TranslationCache translationCache = cache ? new TranslationCache(input, optimizations) : null;
+
+            ExecutorService executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors()
+            );
+            try {
+                List<Future<AsmWriter>> translations = new ArrayList<Future<AsmWriter>>();
+                for (String fileName : fileList) {
+                    translations.add(executor.submit(() -> translationCache == null
+                        ? translateFile(fileName, optimizations)
+                        : translationCache.translate(fileName, name -> translateFile(name, optimizations))
+                    ));
+                }
+                for (Future<AsmWriter> translation : translations) {
+                    codeWriter.writeTranslation(awaitTranslation(translation));
                 }
+            } finally {
+                executor.shutdownNow();
+            }
+            if (translationCache != null) {
+                System.out.println(String.format(
+                    "cache: %d files translated, %d reused",
+                    translationCache.misses(), translationCache.hits()
+                ));
             }
         } else {
             // simply call handleFile on the single file
@@ -38,10 +103,81 @@ public class Main {
         }
         
         codeWriter.close();
+        System.out.println(String.format(
+            "%s: %d bytes, %d instructions (%d before optimization)",
+            outputFile,
+            codeWriter.bytesWritten(),
+            codeWriter.instructionsWritten(),
+            codeWriter.instructionsEmitted()
+        ));
+    }
+
+    private static void writeBinaries(String input) throws IOException {
+        // converts the .vm input file, or every .vm file in the input directory
+        List<String> fileNames = input.contains(".vm") ? List.of(input) : CommandSource.listDirectory(input);
+        for (String fileName : fileNames) {
+            if (fileName.endsWith(".vm")) {
+                BinaryWriter.convert(fileName, BinaryParser.binaryFileName(fileName));
+            }
+        }
+    }
+
+    private static void interpret(String input, String args[]) throws IOException {
+        // --steps N runs at most N commands, defaulting to ten million
+        // address=value sets a RAM word before the program starts
+        // address prints a RAM word after the program has run
+        long maxSteps = 10_000_000;
+        List<Integer> printed = new ArrayList<Integer>();
+        VMInterpreter interpreter = new VMInterpreter(VMLinker.link(input));
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--steps")) {
+                maxSteps = Long.parseLong(args[++i]);
+            } else if (args[i].contains("=")) {
+                String[] assignment = args[i].split("=");
+                interpreter.poke(Integer.parseInt(assignment[0]), Integer.parseInt(assignment[1]));
+            } else if (!args[i].startsWith("--")) {
+                printed.add(Integer.parseInt(args[i]));
+            }
+        }
+
+        long start = System.nanoTime();
+        long executed = interpreter.run(maxSteps);
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println(String.format(
+            "%d commands%s in %.2f ms (%.1f M commands/sec)",
+            executed, interpreter.halted() ? ", halted," : "",
+            elapsed / 1e6, executed * 1e3 / Math.max(elapsed, 1)
+        ));
+        for (int address : printed) {
+            System.out.println(String.format("RAM[%d] = %d", address, interpreter.peek(address)));
+        }
+    }
+
+    private static AsmWriter translateFile(String fileName, Set<Optimization> optimizations) throws IOException {
+        // translates a single file into a buffer using its own CodeWriter
+        AsmWriter buffer = CodeWriter.newAsmWriter(null, optimizations);
+        handleFile(fileName, new CodeWriter(buffer, optimizations));
+        return buffer;
+    }
+
+    private static AsmWriter awaitTranslation(Future<AsmWriter> translation) throws IOException {
+        // waits for a worker and rethrows whatever made its translation fail
+        try {
+            return translation.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while translating", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
     }
 
     private static void handleFile(String fileName, CodeWriter codeWriter) throws IOException, FileNotFoundException {
-        Parser parser = new Parser(fileName);
+        CommandSource parser = CommandSource.open(fileName);
         // get just the last name in the path of the filename
         String stripExtension = fileName.split("\\.")[0];
         String[] paths = stripExtension.split("/");
@@ -50,30 +186,38 @@ public class Main {
         while (parser.hasMoreCommands()) {
             parser.advance();
 
-            if (parser.commandType() == CommandType.C_ARITHMETIC) {
-                codeWriter.writeArithmetic(parser.command());
-            } else if (parser.commandType() == CommandType.C_LABEL) {
-                codeWriter.writeLabel(parser.arg1());
-            } else if (parser.commandType() == CommandType.C_GOTO) {
-                codeWriter.writeGoto(parser.arg1());
-            } else if (parser.commandType() == CommandType.C_IF) {
-                codeWriter.writeIf(parser.arg1());
-            } else if (parser.commandType() == CommandType.C_FUNCTION) {
-                codeWriter.writeFunction(parser.arg1(), parser.arg2());
-            } else if (parser.commandType() == CommandType.C_RETURN) {
-                codeWriter.writeReturn();
-            } else if (parser.commandType() == CommandType.C_CALL) {
-                codeWriter.writeCall(parser.arg1(), parser.arg2());
-            } else if (
-                parser.commandType() == CommandType.C_PUSH || 
-                parser.commandType() == CommandType.C_POP
-            ) {
-                codeWriter.writePushPop(
-                    parser.commandType(),
-                    parser.arg1(), 
-                    parser.arg2()
-                );
+            switch (parser.commandType()) {
+                case C_ARITHMETIC:
+                    codeWriter.writeArithmetic(parser.command());
+                    break;
+                case C_LABEL:
+                    codeWriter.writeLabel(parser.arg1());
+                    break;
+                case C_GOTO:
+                    codeWriter.writeGoto(parser.arg1());
+                    break;
+                case C_IF:
+                    codeWriter.writeIf(parser.arg1());
+                    break;
+                case C_FUNCTION:
+                    codeWriter.writeFunction(parser.arg1(), parser.arg2());
+                    break;
+                case C_RETURN:
+                    codeWriter.writeReturn();
+                    break;
+                case C_CALL:
+                    codeWriter.writeCall(parser.arg1(), parser.arg2());
+                    break;
+                case C_PUSH:
+                case C_POP:
+                    codeWriter.writePushPop(
+                        parser.commandType(),
+                        parser.segment(),
+                        parser.arg2()
+                    );
+                    break;
             }
         }
+        codeWriter.finishFile();
     }
 }
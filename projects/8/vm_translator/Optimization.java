@@ -0,0 +1,15 @@
+package vm_translator;
+
+enum Optimization {
+    // emit one global $$CALL and $$RETURN routine and jump to them from
+    // short per-site stubs instead of inlining every call and return
+    SHARED_CALL_RETURN,
+    // pass the generated instructions through a PeepholeOptimizer
+    PEEPHOLE,
+    // emit one $$EQ, $$GT and $$LT routine and call them from each comparison
+    SHARED_COMPARE,
+    // jump on a comparison that feeds an if-goto without pushing its result
+    FUSED_COMPARE_BRANCH,
+    // keep the top of the stack in D within a basic block
+    CACHE_TOP
+}
@@ -1,39 +1,83 @@
 package vm_translator;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 
-public class Parser {
-    String[] commands;
+public class Parser implements CommandSource {
+    // every command of the file, parsed once when the file is read
+    Command[] commands;
     int commandIndex = -1;
+    Command current = null;
 
     public Parser(String fileName) throws FileNotFoundException, IOException {
-        // opens the file stream and gets ready to parse it
-        BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
-        commands = readFile(bufferedReader);
-        bufferedReader.close();
+        // maps the file and gets ready to parse it
+        commands = readFile(new SourceReader(fileName), fileName);
     }
 
-    private String[] readFile(BufferedReader reader) throws IOException{
-        // reads all lines from a buffered reader to an array
-        // ignores comments, strips white space, and ignores blank lines
-        List<String> lines = new ArrayList<String>();
-        String line = null;
+    private Command[] readFile(SourceReader reader, String fileName) {
+        // parses all lines from the source to an array of commands
+        // ignores comments, strips white space, and ignores blank lines.
+        // Lines are only turned into Strings once they are known to be commands
+        List<Command> lines = new ArrayList<Command>();
 
-        while ((line = reader.readLine()) != null) {
+        int lineNumber = 0;
+        while (reader.hasMoreLines()) {
+            SourceReader.Slice line = reader.nextLine().trim();
+            lineNumber++;
             if (!line.isEmpty() && !line.startsWith("//")) {
-                // strip any leading whitespace
-                lines.add(line.trim());
+                try {
+                    lines.add(parseCommand(line.toString()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format(
+                        "%s:%d: %s", fileName, lineNumber, e.getMessage()
+                    ), e);
+                }
             }
         }
 
         // convert array list of lines to an array
-        return lines.toArray(new String[lines.size()]);
+        return lines.toArray(new Command[lines.size()]);
+    }
+
+    private static Command parseCommand(String line) {
+        // splits a line once into its command and arguments. Arguments
+        // are interned, the same label or function name is usually on
+        // many lines
+        String[] components = line.split("\\s+");
+        String command = components[0].intern();
+        CommandType type = commandType(command);
+        if (type == null) {
+            throw new IllegalArgumentException("unknown command " + command);
+        }
+        Segment segment = null;
+        String arg1 = null;
+        int arg2 = 0;
+        if (type != CommandType.C_ARITHMETIC && type != CommandType.C_RETURN) {
+            arg1 = argument(components, 1, line).intern();
+        }
+        if (type == CommandType.C_PUSH || type == CommandType.C_POP) {
+            segment = Segment.of(arg1);
+            if (segment == null) {
+                throw new IllegalArgumentException("unknown segment " + arg1);
+            }
+        }
+        if (
+            type == CommandType.C_PUSH || type == CommandType.C_POP ||
+            type == CommandType.C_FUNCTION || type == CommandType.C_CALL
+        ) {
+            arg2 = Integer.parseInt(argument(components, 2, line));
+        }
+        return new Command(type, command, segment, arg1, arg2);
+    }
+
+    private static String argument(String[] components, int index, String line) {
+        if (index >= components.length || components[index].startsWith("//")) {
+            throw new IllegalArgumentException("missing argument in " + line);
+        }
+        return components[index];
     }
 
     public boolean hasMoreCommands() {
@@ -45,11 +89,12 @@ public class Parser {
         // command. Should only be called if hasMoreCommands is true.
         // Initially there is no current command
         commandIndex++;
+        current = commands[commandIndex];
     }
 
-    public CommandType commandType() {
-        // returns the type of the current VM command
-        switch(command()) {
+    private static CommandType commandType(String command) {
+        // returns the type of a VM command, or null if it is not one
+        switch(command) {
             case "push":
                 return CommandType.C_PUSH;
             case "pop":
@@ -67,21 +112,13 @@ public class Parser {
             case "call":
                 return CommandType.C_CALL;
             case "add":
-                return CommandType.C_ARITHMETIC;
             case "sub":
-                return CommandType.C_ARITHMETIC;
             case "neg":
-                return CommandType.C_ARITHMETIC;
             case "eq":
-                return CommandType.C_ARITHMETIC;
             case "gt":
-                return CommandType.C_ARITHMETIC;
             case "lt":
-                return CommandType.C_ARITHMETIC;
             case "and":
-                return CommandType.C_ARITHMETIC;
             case "or":
-                return CommandType.C_ARITHMETIC;
             case "not":
                 return CommandType.C_ARITHMETIC;
             default:
@@ -89,25 +126,30 @@ public class Parser {
         }
     }
 
-    private String[] commandComponents() {
-        return commands[commandIndex].split("\\s");
+    public CommandType commandType() {
+        // returns the type of the current VM command
+        return current.type();
     }
 
     public String command() {
         // returns the current command
-        return commandComponents()[0];
+        return current.command();
+    }
+
+    public Segment segment() {
+        return current.segment();
     }
 
     public String arg1() {
         // returns the first argument of the current command
         // should not be called if the current command is C_RETURN
-        return commandComponents()[1];
+        return current.arg1();
     }
 
     public int arg2() {
         // returns the second argument of the current command
         // should be called only if the current command is C_PUSH,
         // C_POP, C_FUNCTION, or C_CALL
-        return Integer.parseInt(commandComponents()[2]);
+        return current.arg2();
     }
 }
@@ -0,0 +1,185 @@
+package vm_translator;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+public class PeepholeOptimizer {
+    // Rewrites short instruction sequences produced by CodeWriter as they
+    // are emitted. AsmWriter keeps the last few instructions in a window and
+    // hands it over after every instruction; labels end the window, so no
+    // rule ever looks across a jump target
+
+    // @SP M=M+1 @SP M=M-1 (a push followed by a pop) leaves SP unchanged
+    static final PeepholeRule CANCEL_INCREMENT_DECREMENT = window -> {
+        if (endsWith(window, "@SP", "M=M+1", "@SP", "M=M-1")
+                || endsWith(window, "@SP", "M=M-1", "@SP", "M=M+1")) {
+            replaceEnd(window, 4, "@SP");
+            return true;
+        }
+        return false;
+    };
+
+    // @SP M=M+1 @SP AM=M-1 (a push followed by a pop) only points A at the top
+    static final PeepholeRule CANCEL_INCREMENT_POP = window -> {
+        if (endsWith(window, "@SP", "M=M+1", "@SP", "AM=M-1")) {
+            replaceEnd(window, 4, "@SP", "A=M");
+            return true;
+        }
+        return false;
+    };
+
+    // an A instruction immediately followed by another one has no effect
+    static final PeepholeRule DEAD_ADDRESS = window -> {
+        int size = window.size();
+        if (size >= 2 && window.get(size - 2).startsWith("@") && window.get(size - 1).startsWith("@")) {
+            window.remove(size - 2);
+            return true;
+        }
+        return false;
+    };
+
+    // @SP M=M-1 @SP A=M decrements SP and points A at the new top
+    static final PeepholeRule FUSE_DECREMENT_LOAD = window -> {
+        if (endsWith(window, "@SP", "M=M-1", "@SP", "A=M")) {
+            replaceEnd(window, 4, "@SP", "AM=M-1");
+            return true;
+        }
+        return false;
+    };
+
+    // @SP A=M ... @SP A=M reloads the address A already holds, as long as
+    // nothing in between changes A or jumps. Instructions in between may
+    // write M: A points into the stack, never at SP itself
+    static final PeepholeRule REDUNDANT_STACK_RELOAD = window -> {
+        int size = window.size();
+        if (!endsWith(window, "@SP", "A=M")) {
+            return false;
+        }
+        for (int i = size - 3; i >= 1; i--) {
+            String instruction = window.get(i);
+            if (window.get(i - 1).equals("@SP") && (instruction.equals("A=M") || instruction.equals("AM=M-1"))) {
+                window.remove(size - 1);
+                window.remove(size - 2);
+                return true;
+            }
+            if (instruction.startsWith("@") || instruction.contains(";") || writesA(instruction)) {
+                return false;
+            }
+        }
+        return false;
+    };
+
+    // M=D D=M and D=M M=D: the second copy moves a value that is already there
+    static final PeepholeRule REDUNDANT_COPY = window -> {
+        if (endsWith(window, "M=D", "D=M") || endsWith(window, "D=M", "M=D")) {
+            window.remove(window.size() - 1);
+            return true;
+        }
+        return false;
+    };
+
+    // @SP A=M M=D @SP AM=M-1 stores into the slot at the top of the stack
+    // and then pops below it, so the stored value can never be read
+    static final PeepholeRule DEAD_STORE_ABOVE_STACK = window -> {
+        if (endsWith(window, "@SP", "A=M", "M=D", "@SP", "AM=M-1")) {
+            replaceEnd(window, 5, "@SP", "AM=M-1");
+            return true;
+        }
+        return false;
+    };
+
+    // @n D=A @m D=D+A with constant n and m computes n+m at run time.
+    // The folded code leaves n+m in A instead of m, so the rule waits for
+    // the next instruction and only fires when it is an @ load, which
+    // overwrites A before anything can read it
+    static final PeepholeRule FOLD_CONSTANT_SUM = window -> {
+        int size = window.size();
+        if (size < 5 || !window.get(size - 4).equals("D=A") || !window.get(size - 2).equals("D=D+A")
+                || !window.get(size - 1).startsWith("@")) {
+            return false;
+        }
+        int first = constant(window.get(size - 5));
+        int second = constant(window.get(size - 3));
+        if (first < 0 || second < 0 || first + second > 32767) {
+            return false;
+        }
+        replaceEnd(window, 5, "@" + (first + second), "D=A", window.get(size - 1));
+        return true;
+    };
+
+    public static final List<PeepholeRule> DEFAULT_RULES = Arrays.asList(
+        CANCEL_INCREMENT_DECREMENT,
+        CANCEL_INCREMENT_POP,
+        DEAD_ADDRESS,
+        FUSE_DECREMENT_LOAD,
+        REDUNDANT_STACK_RELOAD,
+        REDUNDANT_COPY,
+        DEAD_STORE_ABOVE_STACK,
+        FOLD_CONSTANT_SUM
+    );
+
+    private final List<PeepholeRule> rules;
+
+    public PeepholeOptimizer() {
+        this(DEFAULT_RULES);
+    }
+
+    public PeepholeOptimizer(List<PeepholeRule> rules) {
+        this.rules = rules;
+    }
+
+    public void rewrite(List<String> window) {
+        // applies the rules to the end of the window until none matches
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (PeepholeRule rule : rules) {
+                if (rule.apply(window)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    // below are convenience methods used by the rules
+
+    private static boolean endsWith(List<String> window, String... instructions) {
+        int offset = window.size() - instructions.length;
+        if (offset < 0) {
+            return false;
+        }
+        for (int i = 0; i < instructions.length; i++) {
+            if (!window.get(offset + i).equals(instructions[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void replaceEnd(List<String> window, int count, String... instructions) {
+        for (int i = 0; i < count; i++) {
+            window.remove(window.size() - 1);
+        }
+        window.addAll(Arrays.asList(instructions));
+    }
+
+    private static boolean writesA(String instruction) {
+        int equals = instruction.indexOf('=');
+        return equals >= 0 && instruction.substring(0, equals).contains("A");
+    }
+
+    private static int constant(String instruction) {
+        // returns the value of an A instruction with a decimal constant, else -1
+        if (instruction.length() < 2 || instruction.charAt(0) != '@') {
+            return -1;
+        }
+        for (int i = 1; i < instruction.length(); i++) {
+            if (!Character.isDigit(instruction.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(instruction.substring(1));
+    }
+}
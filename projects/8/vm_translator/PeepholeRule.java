@@ -0,0 +1,11 @@
+package vm_translator;
+
+import java.util.List;
+
+interface PeepholeRule {
+    // tries to rewrite the instructions at the end of the window, which
+    // holds the most recently emitted instructions without line endings.
+    // Returns true if the window was changed. A rule must only make the
+    // window shorter, so applying rules until none matches terminates
+    boolean apply(List<String> window);
+}
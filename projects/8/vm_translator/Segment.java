@@ -0,0 +1,36 @@
+package vm_translator;
+
+enum Segment {
+    // the memory segments of push and pop. The order is part of the .vmb format
+    CONSTANT("constant"),
+    LOCAL("local"),
+    ARGUMENT("argument"),
+    THIS("this"),
+    THAT("that"),
+    TEMP("temp"),
+    POINTER("pointer"),
+    STATIC("static");
+
+    private static final Segment[] VALUES = values();
+
+    final String keyword;
+
+    Segment(String keyword) {
+        this.keyword = keyword;
+    }
+
+    static Segment of(int code) {
+        // the segment with the given ordinal, or null
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+
+    static Segment of(String keyword) {
+        // the segment named by a push or pop, or null
+        for (Segment segment : VALUES) {
+            if (segment.keyword.equals(keyword)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package vm_translator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class TranslationCache {
+    // Keeps the assembly translated from each VM file of a directory in
+    // <directory>/.vmcache, keyed by a hash of the file's content, its
+    // name (statics and labels are named after it), the optimizations and
+    // the translator version. Every label a file's translation declares
+    // starts with the file name and its counters restart for each file,
+    // so a cached fragment can be appended as is to any later build.
+    //
+    // A cache file is a header line "// <emitted> <written>" with the
+    // instruction counts of the fragment, followed by the fragment
+    static final String DIRECTORY = ".vmcache";
+    // change whenever CodeWriter generates different code for the same input
+    static final int TRANSLATOR_VERSION = 1;
+
+    private final Path directory;
+    private final String optimizations;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public TranslationCache(String inputDirectory, Set<Optimization> optimizations) throws IOException {
+        this.directory = Paths.get(inputDirectory, DIRECTORY);
+        this.optimizations = optimizations.toString();
+        Files.createDirectories(directory);
+    }
+
+    public AsmWriter translate(String fileName, Translator translator) throws IOException {
+        // returns the cached translation of a file, or translates and
+        // caches it if the file changed since it was last translated
+        String baseName = Paths.get(fileName).getFileName().toString();
+        String key = key(baseName, Files.readAllBytes(Paths.get(fileName)));
+        Path entry = directory.resolve(baseName + "-" + key + ".asm");
+
+        AsmWriter cached = load(entry);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        AsmWriter fragment = translator.translate(fileName);
+        store(entry, baseName, fragment);
+        return fragment;
+    }
+
+    public int hits() {
+        return hits.get();
+    }
+
+    public int misses() {
+        return misses.get();
+    }
+
+    interface Translator {
+        // translates a file into an in-memory AsmWriter
+        AsmWriter translate(String fileName) throws IOException;
+    }
+
+    private String key(String baseName, byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update((TRANSLATOR_VERSION + "\n" + optimizations + "\n" + baseName + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+            digest.update(content);
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static AsmWriter load(Path entry) throws IOException {
+        // returns null when there is no usable entry
+        if (!Files.isRegularFile(entry)) {
+            return null;
+        }
+        String contents = new String(Files.readAllBytes(entry), StandardCharsets.US_ASCII);
+        int headerEnd = contents.indexOf('\n');
+        if (headerEnd < 0 || !contents.startsWith("// ")) {
+            return null;
+        }
+        String[] counts = contents.substring(3, headerEnd).split(" ");
+        if (counts.length != 2) {
+            return null;
+        }
+        try {
+            return AsmWriter.ofContents(
+                contents.substring(headerEnd + 1),
+                Long.parseLong(counts[0]),
+                Long.parseLong(counts[1])
+            );
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void store(Path entry, String baseName, AsmWriter fragment) throws IOException {
+        // writes the entry under a temporary name and renames it, so a
+        // build that is interrupted never leaves half an entry behind.
+        // Older entries for the same file can never be used again
+        String contents = String.format(
+            "// %d %d\n%s", fragment.instructionsEmitted(), fragment.instructionsWritten(), fragment.contents()
+        );
+        Path temporary = Files.createTempFile(directory, baseName, ".tmp");
+        Files.write(temporary, contents.getBytes(StandardCharsets.US_ASCII));
+        Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, baseName + "-*.asm")) {
+            for (Path old : entries) {
+                if (!old.equals(entry)) {
+                    Files.deleteIfExists(old);
+                }
+            }
+        }
+    }
+}
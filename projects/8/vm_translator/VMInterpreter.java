@@ -0,0 +1,200 @@
+package vm_translator;
+
+
+public class VMInterpreter {
+    // Executes a linked VMProgram directly. RAM has the same layout as the
+    // translated program on the Hack computer: SP, LCL, ARG, THIS and THAT
+    // in 0 - 4, temp in 5 - 12, statics from 16 and the stack from 256,
+    // with every word holding a sign extended 16-bit value
+    public static final int MEMORY_SIZE = 32 * 1024;
+    private static final int SP = 0;
+    private static final int LCL = 1;
+    private static final int ARG = 2;
+    private static final int THIS = 3;
+    private static final int THAT = 4;
+    private static final int STACK_BASE = 256;
+
+    private final int[] code;
+    private final int[] memory = new int[MEMORY_SIZE];
+    private int pc = 0;
+    private boolean halted = false;
+    private long steps = 0;
+
+    public VMInterpreter(VMProgram program) {
+        this.code = program.code;
+        memory[SP] = STACK_BASE;
+    }
+
+    public long run(long maxSteps) {
+        // executes up to maxSteps commands and returns how many ran. Stops
+        // early when the program halts by returning from Sys.init or by
+        // running past its last command
+        int[] code = this.code;
+        int[] memory = this.memory;
+        int pc = this.pc;
+        int sp = memory[SP];
+        long executed = 0;
+        dispatch:
+        while (executed < maxSteps) {
+            executed++;
+            switch (code[pc]) {
+                case VMOpcode.PUSH_CONSTANT:
+                    memory[sp++] = (short) code[pc + 1];
+                    pc += 2;
+                    break;
+                case VMOpcode.PUSH_LOCAL:
+                    memory[sp++] = memory[memory[LCL] + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case VMOpcode.PUSH_ARGUMENT:
+                    memory[sp++] = memory[memory[ARG] + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case VMOpcode.PUSH_THIS:
+                    memory[sp++] = memory[memory[THIS] + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case VMOpcode.PUSH_THAT:
+                    memory[sp++] = memory[memory[THAT] + code[pc + 1]];
+                    pc += 2;
+                    break;
+                case VMOpcode.PUSH_ADDRESS:
+                    memory[sp++] = memory[code[pc + 1]];
+                    pc += 2;
+                    break;
+                case VMOpcode.POP_LOCAL:
+                    memory[memory[LCL] + code[pc + 1]] = memory[--sp];
+                    pc += 2;
+                    break;
+                case VMOpcode.POP_ARGUMENT:
+                    memory[memory[ARG] + code[pc + 1]] = memory[--sp];
+                    pc += 2;
+                    break;
+                case VMOpcode.POP_THIS:
+                    memory[memory[THIS] + code[pc + 1]] = memory[--sp];
+                    pc += 2;
+                    break;
+                case VMOpcode.POP_THAT:
+                    memory[memory[THAT] + code[pc + 1]] = memory[--sp];
+                    pc += 2;
+                    break;
+                case VMOpcode.POP_ADDRESS:
+                    memory[code[pc + 1]] = memory[--sp];
+                    pc += 2;
+                    break;
+                case VMOpcode.ADD:
+                    sp--;
+                    memory[sp - 1] = (short) (memory[sp - 1] + memory[sp]);
+                    pc++;
+                    break;
+                case VMOpcode.SUB:
+                    sp--;
+                    memory[sp - 1] = (short) (memory[sp - 1] - memory[sp]);
+                    pc++;
+                    break;
+                case VMOpcode.NEG:
+                    memory[sp - 1] = (short) -memory[sp - 1];
+                    pc++;
+                    break;
+                case VMOpcode.EQ:
+                    sp--;
+                    memory[sp - 1] = memory[sp - 1] == memory[sp] ? -1 : 0;
+                    pc++;
+                    break;
+                case VMOpcode.GT:
+                    sp--;
+                    memory[sp - 1] = memory[sp - 1] > memory[sp] ? -1 : 0;
+                    pc++;
+                    break;
+                case VMOpcode.LT:
+                    sp--;
+                    memory[sp - 1] = memory[sp - 1] < memory[sp] ? -1 : 0;
+                    pc++;
+                    break;
+                case VMOpcode.AND:
+                    sp--;
+                    memory[sp - 1] = memory[sp - 1] & memory[sp];
+                    pc++;
+                    break;
+                case VMOpcode.OR:
+                    sp--;
+                    memory[sp - 1] = memory[sp - 1] | memory[sp];
+                    pc++;
+                    break;
+                case VMOpcode.NOT:
+                    memory[sp - 1] = ~memory[sp - 1];
+                    pc++;
+                    break;
+                case VMOpcode.GOTO:
+                    pc = code[pc + 1];
+                    break;
+                case VMOpcode.IF_GOTO:
+                    pc = memory[--sp] != 0 ? code[pc + 1] : pc + 2;
+                    break;
+                case VMOpcode.CALL: {
+                    // push the return address and the caller's frame
+                    memory[sp++] = pc + 3;
+                    memory[sp++] = memory[LCL];
+                    memory[sp++] = memory[ARG];
+                    memory[sp++] = memory[THIS];
+                    memory[sp++] = memory[THAT];
+                    memory[ARG] = sp - 5 - code[pc + 2];
+                    memory[LCL] = sp;
+                    pc = code[pc + 1];
+                    break;
+                }
+                case VMOpcode.FUNCTION: {
+                    for (int i = code[pc + 1]; i > 0; i--) {
+                        memory[sp++] = 0;
+                    }
+                    pc += 2;
+                    break;
+                }
+                case VMOpcode.RETURN: {
+                    // put the return value where the arguments started and
+                    // restore the caller's frame
+                    int frame = memory[LCL];
+                    int returnAddress = memory[frame - 5];
+                    memory[memory[ARG]] = memory[sp - 1];
+                    sp = memory[ARG] + 1;
+                    memory[THAT] = memory[frame - 1];
+                    memory[THIS] = memory[frame - 2];
+                    memory[ARG] = memory[frame - 3];
+                    memory[LCL] = memory[frame - 4];
+                    pc = returnAddress;
+                    break;
+                }
+                case VMOpcode.HALT:
+                    // HALT is not a command of the program
+                    halted = true;
+                    executed--;
+                    break dispatch;
+                default:
+                    throw new IllegalStateException(String.format(
+                        "bad opcode %d at %d", code[pc], pc
+                    ));
+            }
+        }
+        memory[SP] = sp;
+        this.pc = pc;
+        steps += executed;
+        return executed;
+    }
+
+    public boolean halted() {
+        return halted;
+    }
+
+    public long steps() {
+        // number of commands executed since the interpreter was created
+        return steps;
+    }
+
+    public int peek(int address) {
+        return memory[address];
+    }
+
+    public void poke(int address, int value) {
+        memory[address] = (short) value;
+    }
+}
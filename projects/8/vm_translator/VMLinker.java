@@ -0,0 +1,245 @@
+package vm_translator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class VMLinker {
+    // Reads VM files with the Parser and links them into a VMProgram.
+    // Labels, functions and statics are resolved to pcs and RAM addresses
+    // here, jumps to code that has not been seen yet are patched once all
+    // files are read
+    private static final int STATIC_BASE = 16;
+    private static final int STATIC_LIMIT = 256;
+
+    private int[] code = new int[1024];
+    private int length = 0;
+
+    private final Map<String, Integer> labels = new HashMap<String, Integer>();
+    private final Map<String, Integer> functions = new HashMap<String, Integer>();
+    private final List<String> functionNames = new ArrayList<String>();
+    // operands still naming a label or function, by position in code
+    private final List<Integer> fixupPositions = new ArrayList<Integer>();
+    private final List<String> fixupNames = new ArrayList<String>();
+    private final List<Boolean> fixupIsCall = new ArrayList<Boolean>();
+    // statics are allocated in the order they are first used, which is
+    // the order the assembler gives the translated file.i variables
+    private final Map<String, Integer> statics = new HashMap<String, Integer>();
+
+    private String fileName;
+    private String functionName;
+
+    public static VMProgram link(String input) throws IOException {
+        // links a single .vm file or every .vm file in a directory,
+        // in file name order as the translator does
+        VMLinker linker = new VMLinker();
+        linker.writeBootstrap();
+        if (input.endsWith(".vm") || input.endsWith(".vmb")) {
+            linker.addFile(input);
+        } else {
+            for (String fileName : CommandSource.listDirectory(input)) {
+                linker.addFile(fileName);
+            }
+        }
+        return linker.finish();
+    }
+
+    private void writeBootstrap() {
+        // call Sys.init if the program has it, otherwise start with the
+        // first command. Returning from Sys.init halts
+        emit(VMOpcode.CALL);
+        emitReference("Sys.init", true);
+        emit(0);
+        emit(VMOpcode.HALT);
+    }
+
+    private void addFile(String path) throws IOException {
+        CommandSource parser = CommandSource.open(path);
+        String stripExtension = path.split("\\.")[0];
+        String[] paths = stripExtension.split("/");
+        fileName = paths[paths.length - 1];
+        functionName = fileName;
+
+        while (parser.hasMoreCommands()) {
+            parser.advance();
+            switch (parser.commandType()) {
+                case C_ARITHMETIC:
+                    emit(VMOpcode.arithmetic(parser.command()));
+                    break;
+                case C_PUSH:
+                    addPush(parser.segment(), parser.arg2());
+                    break;
+                case C_POP:
+                    addPop(parser.segment(), parser.arg2());
+                    break;
+                case C_LABEL:
+                    if (labels.put(scopedLabel(parser.arg1()), length) != null) {
+                        throw new IllegalArgumentException(String.format(
+                            "%s: label %s is declared twice in %s", path, parser.arg1(), functionName
+                        ));
+                    }
+                    break;
+                case C_GOTO:
+                    emit(VMOpcode.GOTO);
+                    emitReference(scopedLabel(parser.arg1()), false);
+                    break;
+                case C_IF:
+                    emit(VMOpcode.IF_GOTO);
+                    emitReference(scopedLabel(parser.arg1()), false);
+                    break;
+                case C_FUNCTION:
+                    functionName = parser.arg1();
+                    if (functions.put(functionName, length) != null) {
+                        throw new IllegalArgumentException(String.format(
+                            "%s: function %s is declared twice", path, functionName
+                        ));
+                    }
+                    functionNames.add(functionName);
+                    emit(VMOpcode.FUNCTION);
+                    emit(parser.arg2());
+                    break;
+                case C_RETURN:
+                    emit(VMOpcode.RETURN);
+                    break;
+                case C_CALL:
+                    emit(VMOpcode.CALL);
+                    emitReference(parser.arg1(), true);
+                    emit(parser.arg2());
+                    break;
+            }
+        }
+    }
+
+    private void addPush(Segment segment, int index) {
+        switch (segment) {
+            case CONSTANT:
+                emit(VMOpcode.PUSH_CONSTANT);
+                emit(index);
+                break;
+            case LOCAL:
+                emit(VMOpcode.PUSH_LOCAL);
+                emit(index);
+                break;
+            case ARGUMENT:
+                emit(VMOpcode.PUSH_ARGUMENT);
+                emit(index);
+                break;
+            case THIS:
+                emit(VMOpcode.PUSH_THIS);
+                emit(index);
+                break;
+            case THAT:
+                emit(VMOpcode.PUSH_THAT);
+                emit(index);
+                break;
+            default:
+                emit(VMOpcode.PUSH_ADDRESS);
+                emit(fixedAddress(segment, index));
+        }
+    }
+
+    private void addPop(Segment segment, int index) {
+        switch (segment) {
+            case LOCAL:
+                emit(VMOpcode.POP_LOCAL);
+                emit(index);
+                break;
+            case ARGUMENT:
+                emit(VMOpcode.POP_ARGUMENT);
+                emit(index);
+                break;
+            case THIS:
+                emit(VMOpcode.POP_THIS);
+                emit(index);
+                break;
+            case THAT:
+                emit(VMOpcode.POP_THAT);
+                emit(index);
+                break;
+            default:
+                emit(VMOpcode.POP_ADDRESS);
+                emit(fixedAddress(segment, index));
+        }
+    }
+
+    private int fixedAddress(Segment segment, int index) {
+        // the RAM address of temp, pointer and static, as laid out by the
+        // translator and the assembler
+        switch (segment) {
+            case TEMP:
+                return 5 + index;
+            case POINTER:
+                return 3 + index;
+            case STATIC:
+                String symbol = fileName + "." + index;
+                Integer address = statics.get(symbol);
+                if (address == null) {
+                    address = STATIC_BASE + statics.size();
+                    if (address >= STATIC_LIMIT) {
+                        throw new IllegalArgumentException("too many static variables");
+                    }
+                    statics.put(symbol, address);
+                }
+                return address;
+            default:
+                throw new IllegalArgumentException("unknown segment " + segment);
+        }
+    }
+
+    private String scopedLabel(String label) {
+        // labels are local to the function declaring them
+        return functionName + "$" + label;
+    }
+
+    private void emit(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = value;
+    }
+
+    private void emitReference(String name, boolean call) {
+        // emits a placeholder for the pc of a label or function
+        fixupPositions.add(length);
+        fixupNames.add(name);
+        fixupIsCall.add(call);
+        emit(-1);
+    }
+
+    private VMProgram finish() {
+        for (int i = 0; i < fixupPositions.size(); i++) {
+            String name = fixupNames.get(i);
+            Integer target = fixupIsCall.get(i) ? functions.get(name) : labels.get(name);
+            if (target == null && i == 0) {
+                // no Sys.init: skip the bootstrap call and start at the
+                // first command, which halts when it runs off the end
+                code[0] = VMOpcode.GOTO;
+                code[1] = 4;
+                code[2] = VMOpcode.HALT;
+                continue;
+            }
+            if (target == null) {
+                throw new IllegalArgumentException(String.format(
+                    "%s %s is not declared", fixupIsCall.get(i) ? "function" : "label", name
+                ));
+            }
+            code[fixupPositions.get(i)] = target;
+        }
+        emit(VMOpcode.HALT);
+
+        int[] entries = new int[functionNames.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = functions.get(functionNames.get(i));
+        }
+        return new VMProgram(
+            Arrays.copyOf(code, length),
+            functionNames.toArray(new String[functionNames.size()]),
+            entries,
+            statics.size()
+        );
+    }
+}
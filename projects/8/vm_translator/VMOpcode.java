@@ -0,0 +1,66 @@
+package vm_translator;
+
+
+final class VMOpcode {
+    // The instruction set of a linked VM program. Each instruction is an
+    // opcode followed by its operands in one int array. push and pop are
+    // split by segment, and temp, pointer and static are resolved to the
+    // RAM address they live at, so the interpreter never looks at names
+    static final int PUSH_CONSTANT = 0;
+    static final int PUSH_LOCAL = 1;
+    static final int PUSH_ARGUMENT = 2;
+    static final int PUSH_THIS = 3;
+    static final int PUSH_THAT = 4;
+    static final int PUSH_ADDRESS = 5;
+    static final int POP_LOCAL = 6;
+    static final int POP_ARGUMENT = 7;
+    static final int POP_THIS = 8;
+    static final int POP_THAT = 9;
+    static final int POP_ADDRESS = 10;
+    static final int ADD = 11;
+    static final int SUB = 12;
+    static final int NEG = 13;
+    static final int EQ = 14;
+    static final int GT = 15;
+    static final int LT = 16;
+    static final int AND = 17;
+    static final int OR = 18;
+    static final int NOT = 19;
+    // operand: the pc to jump to
+    static final int GOTO = 20;
+    static final int IF_GOTO = 21;
+    // operands: the pc of the function and the number of arguments
+    static final int CALL = 22;
+    // operand: the number of locals
+    static final int FUNCTION = 23;
+    static final int RETURN = 24;
+    static final int HALT = 25;
+
+    static final int COUNT = 26;
+
+    private VMOpcode() {
+    }
+
+    static int operandCount(int opcode) {
+        if (opcode <= POP_ADDRESS || opcode == GOTO || opcode == IF_GOTO || opcode == FUNCTION) {
+            return 1;
+        }
+        return opcode == CALL ? 2 : 0;
+    }
+
+    static int arithmetic(String command) {
+        // the opcode of an arithmetic or logical command
+        switch (command) {
+            case "add": return ADD;
+            case "sub": return SUB;
+            case "neg": return NEG;
+            case "eq": return EQ;
+            case "gt": return GT;
+            case "lt": return LT;
+            case "and": return AND;
+            case "or": return OR;
+            case "not": return NOT;
+            default: throw new IllegalArgumentException("unknown command " + command);
+        }
+    }
+}
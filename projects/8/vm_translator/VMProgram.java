@@ -0,0 +1,23 @@
+package vm_translator;
+
+
+public class VMProgram {
+    // A linked VM program: the code of all its files in one array, starting
+    // with the bootstrap at pc 0, and the functions it defines
+    final int[] code;
+    final String[] functionNames;
+    final int[] functionEntries;
+    final int staticCount;
+
+    VMProgram(int[] code, String[] functionNames, int[] functionEntries, int staticCount) {
+        this.code = code;
+        this.functionNames = functionNames;
+        this.functionEntries = functionEntries;
+        this.staticCount = staticCount;
+    }
+
+    public int length() {
+        // number of ints in the code array
+        return code.length;
+    }
+}